@@ -0,0 +1,56 @@
+package spark.jobserver.client;
+
+import static util.Pojo.gson;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.google.gson.reflect.TypeToken;
+
+/**
+ * Cost of binding the responses of <code>GET /jobs/&lt;jobId&gt;</code>,
+ * <code>GET /jobs</code> and <code>GET /binaries</code>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonBindingBenchmark {
+	private static final Type JOBS_TYPE = new TypeToken<ArrayList<JobInfo>>() {
+	}.getType();
+
+	@Param({ "10", "1000" })
+	public int size;
+
+	private String jobResult;
+	private String jobs;
+	private String binaries;
+
+	@Setup
+	public void setUp() {
+		jobResult = Payloads.jobResult(size);
+		jobs = Payloads.jobs(size);
+		binaries = Payloads.binaries(size);
+	}
+
+	@Benchmark
+	public JobInfo jobInfo() {
+		return gson.fromJson(jobResult, JobInfo.class);
+	}
+
+	@Benchmark
+	public List<JobInfo> jobList() {
+		return gson.fromJson(jobs, JOBS_TYPE);
+	}
+
+	@Benchmark
+	public Binaries binaries() {
+		return gson.fromJson(binaries, Binaries.class);
+	}
+}
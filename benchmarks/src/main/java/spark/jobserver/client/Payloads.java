@@ -0,0 +1,52 @@
+package spark.jobserver.client;
+
+import java.util.UUID;
+
+/**
+ * Builds job server responses of a given size for the benchmarks.
+ */
+final class Payloads {
+	private Payloads() {
+	}
+
+	static String job(int i, String status, String result) {
+		return "{\"duration\":\"" + (i % 100) + ".345 secs\",\"classPath\":\"spark.jobserver.WordCountExample\","
+				+ "\"startTime\":\"2017-07-20T10:11:12.345+08:00\",\"context\":\"ctx-" + (i % 8) + "\","
+				+ "\"status\":\"" + status + "\",\"jobId\":\"" + UUID.randomUUID() + "\""
+				+ (result == null ? "" : ",\"result\":" + result) + "}";
+	}
+
+	/**
+	 * A finished job whose result is an array of size word counts.
+	 */
+	static String jobResult(int size) {
+		StringBuilder result = new StringBuilder("[");
+		for (int i = 0; i < size; i++) {
+			if (i > 0)
+				result.append(',');
+			result.append("{\"word\":\"w").append(i).append("\",\"count\":").append(i * 7).append('}');
+		}
+		return job(0, "FINISHED", result.append(']').toString());
+	}
+
+	static String jobs(int size) {
+		StringBuilder jobs = new StringBuilder("[");
+		for (int i = 0; i < size; i++) {
+			if (i > 0)
+				jobs.append(',');
+			jobs.append(job(i, i % 10 == 0 ? "RUNNING" : "FINISHED", null));
+		}
+		return jobs.append(']').toString();
+	}
+
+	static String binaries(int size) {
+		StringBuilder binaries = new StringBuilder("{");
+		for (int i = 0; i < size; i++) {
+			if (i > 0)
+				binaries.append(',');
+			binaries.append("\"app-").append(i)
+					.append("\":{\"binary-type\":\"Jar\",\"upload-time\":\"2017-07-20T10:11:12.345+08:00\"}");
+		}
+		return binaries.append('}').toString();
+	}
+}
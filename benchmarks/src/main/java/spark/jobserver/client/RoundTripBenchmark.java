@@ -0,0 +1,67 @@
+package spark.jobserver.client;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+/**
+ * End-to-end <code>startJob</code> and <code>getJobResult</code> against a
+ * local mock job server, including connection reuse and response parsing.
+ * Sample time mode reports latency percentiles.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RoundTripBenchmark {
+	@Param({ "10", "1000" })
+	public int resultSize;
+
+	private MockWebServer server;
+	private JobServerClient client;
+	private Map<String, String> params;
+
+	@Setup
+	public void setUp() throws IOException {
+		String started = Payloads.job(0, "STARTED", null);
+		String finished = Payloads.jobResult(resultSize);
+		server = new MockWebServer();
+		server.setDispatcher(new Dispatcher() {
+			@Override
+			public MockResponse dispatch(RecordedRequest request) {
+				return new MockResponse().setBody("POST".equals(request.getMethod()) ? started : finished);
+			}
+		});
+		server.start();
+		client = JobServerClient.builder().host(server.getHostName()).port(server.getPort()).build();
+		params = new HashMap<>();
+		params.put(Constants.PARAM_APP_NAME, "bench");
+		params.put(Constants.PARAM_CLASS_PATH, "spark.jobserver.WordCountExample");
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		client.close();
+		server.shutdown();
+	}
+
+	@Benchmark
+	public JobInfo startJob() throws IOException {
+		return client.startJob("input.string = a b c a", params);
+	}
+
+	@Benchmark
+	public JobInfo getJobResult() throws IOException {
+		return client.getJobResult("3f9a6e2c-1b7d-4c1e-9a53-0d2f6b8e4a11");
+	}
+}
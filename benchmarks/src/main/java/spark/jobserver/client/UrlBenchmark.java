@@ -0,0 +1,44 @@
+package spark.jobserver.client;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import okhttp3.HttpUrl;
+
+/**
+ * Cost of building request urls with a growing number of query parameters.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UrlBenchmark {
+	@Param({ "0", "3", "10" })
+	public int params;
+
+	private JobServerClient client;
+	private Map<String, String> args;
+
+	@Setup
+	public void setUp() {
+		client = JobServerClient.builder().host("localhost").port(8090).build();
+		args = new HashMap<>();
+		for (int i = 0; i < params; i++)
+			args.put("spark.executor.param" + i, "value " + i);
+	}
+
+	@TearDown
+	public void tearDown() {
+		client.close();
+	}
+
+	@Benchmark
+	public HttpUrl makeUrl() {
+		return client.makeUrl("/jobs", args);
+	}
+}
@@ -0,0 +1,530 @@
+package spark.jobserver.client.jdk21;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublisher;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodySubscribers;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.StandardCharsets;
+import java.nio.charset.UnsupportedCharsetException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+import java.util.zip.GZIPInputStream;
+
+import okhttp3.HttpUrl;
+import spark.jobserver.client.JobServerClientException;
+import util.BodyReader;
+import util.CircuitBreaker;
+import util.Http;
+import util.Metrics;
+import util.ProgressListener;
+import util.RetryPolicy;
+import util.Transport;
+
+/**
+ * Transport of a <code>JobServerClient</code> based on
+ * <code>java.net.http.HttpClient</code>, for callers running on virtual threads.
+ *
+ * <p>
+ * OkHttp 3 blocks inside <code>synchronized</code> blocks, which pins the carrier
+ * thread of a virtual thread. This transport only blocks in
+ * <code>HttpClient.send</code> and on a <code>Semaphore</code>, so thousands of
+ * virtual threads can wait on it. Asynchronous calls run the synchronous ones
+ * on a virtual thread of their own, which also runs the callbacks of the
+ * returned future.
+ *
+ * <p>
+ * Failed GETs are retried and a circuit breaker fails calls fast while the job
+ * server is down by the same {@link RetryPolicy} as {@link Http}, and gzip
+ * responses are decoded. Request bodies are never compressed.
+ *
+ * <pre>
+ * JobServerClient client = JobServerClient.builder().host(host).port(port)
+ * 		.transport(JdkHttpTransport.builder().maxRequestsPerHost(64).build()).build();
+ * </pre>
+ */
+public class JdkHttpTransport implements Transport {
+	private static final String JSON = "application/json; charset=utf-8";
+	private static final String JAR = "application/java-archive";
+	private static final int MAX_ERROR_BODY = 512;
+
+	private final ExecutorService executor;
+	private final HttpClient client;
+	private final Semaphore permits;
+	private final int maxRequestsPerHost;
+	private final Duration readTimeout;
+	private final Duration writeTimeout;
+	private final RetryPolicy retry;
+	private final Metrics metrics;
+
+	/**
+	 * Creates a transport with default settings.
+	 */
+	public JdkHttpTransport() {
+		this(builder());
+	}
+
+	private JdkHttpTransport(Builder builder) {
+		this.executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("jobserver-http-", 0).factory());
+		this.client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).executor(executor)
+				.connectTimeout(Duration.ofMillis(
+						orDefault(builder.connectTimeoutMillis, Http.DEFAULT_CONNECT_TIMEOUT_MILLIS)))
+				.build();
+		this.maxRequestsPerHost = builder.maxRequestsPerHost > 0 ? builder.maxRequestsPerHost
+				: Http.DEFAULT_MAX_REQUESTS_PER_HOST;
+		this.permits = new Semaphore(maxRequestsPerHost, true);
+		this.readTimeout = Duration.ofMillis(orDefault(builder.readTimeoutMillis, Http.DEFAULT_READ_TIMEOUT_MILLIS));
+		this.writeTimeout = Duration
+				.ofMillis(orDefault(builder.writeTimeoutMillis, Http.DEFAULT_WRITE_TIMEOUT_MILLIS));
+		this.metrics = builder.metrics != null ? builder.metrics : Metrics.NONE;
+		this.retry = RetryPolicy.builder().maxRetries(builder.maxRetries).retryBackoffMillis(builder.retryBackoffMillis)
+				.deadlineMillis(builder.deadlineMillis).failureThreshold(builder.failureThreshold)
+				.openMillis(builder.openMillis).metrics(metrics).build();
+		this.metrics.bindConnectionPool(() -> 0, () -> maxRequestsPerHost - permits.availablePermits());
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * Settings of a {@link JdkHttpTransport}. Any zero value falls back to the
+	 * corresponding <code>DEFAULT_*</code> constant of {@link Http}.
+	 */
+	public static class Builder {
+		private int maxRequestsPerHost;
+		private long connectTimeoutMillis;
+		private long readTimeoutMillis;
+		private long writeTimeoutMillis;
+		private int maxRetries;
+		private long retryBackoffMillis;
+		private long deadlineMillis;
+		private int failureThreshold;
+		private long openMillis;
+		private Metrics metrics;
+
+		private Builder() {
+		}
+
+		/**
+		 * Max concurrent requests to the job server; more callers wait for a
+		 * permit without holding a thread.
+		 */
+		public Builder maxRequestsPerHost(int maxRequestsPerHost) {
+			this.maxRequestsPerHost = maxRequestsPerHost;
+			return this;
+		}
+
+		public Builder connectTimeoutMillis(long connectTimeoutMillis) {
+			this.connectTimeoutMillis = connectTimeoutMillis;
+			return this;
+		}
+
+		/**
+		 * Time to wait for the response headers of a JSON request.
+		 */
+		public Builder readTimeoutMillis(long readTimeoutMillis) {
+			this.readTimeoutMillis = readTimeoutMillis;
+			return this;
+		}
+
+		/**
+		 * Time to wait for the response headers of a jar upload.
+		 */
+		public Builder writeTimeoutMillis(long writeTimeoutMillis) {
+			this.writeTimeoutMillis = writeTimeoutMillis;
+			return this;
+		}
+
+		/**
+		 * Retries of a failed GET, negative to disable retries.
+		 */
+		public Builder maxRetries(int maxRetries) {
+			this.maxRetries = maxRetries;
+			return this;
+		}
+
+		public Builder retryBackoffMillis(long retryBackoffMillis) {
+			this.retryBackoffMillis = retryBackoffMillis;
+			return this;
+		}
+
+		/**
+		 * Overall time budget of a GET including retries, zero for none.
+		 */
+		public Builder deadlineMillis(long deadlineMillis) {
+			this.deadlineMillis = deadlineMillis;
+			return this;
+		}
+
+		/**
+		 * Consecutive failures opening the circuit breaker, negative to disable it.
+		 */
+		public Builder failureThreshold(int failureThreshold) {
+			this.failureThreshold = failureThreshold;
+			return this;
+		}
+
+		public Builder openMillis(long openMillis) {
+			this.openMillis = openMillis;
+			return this;
+		}
+
+		/**
+		 * Receives the timings of the requests. Its connection gauges report the
+		 * requests in flight as active and no idle connections.
+		 */
+		public Builder metrics(Metrics metrics) {
+			this.metrics = metrics;
+			return this;
+		}
+
+		public JdkHttpTransport build() {
+			return new JdkHttpTransport(this);
+		}
+	}
+
+	@Override
+	public String get(HttpUrl url) throws IOException {
+		return execute(newRequest(url).GET(), "GET", url, 0, JdkHttpTransport::readString);
+	}
+
+	@Override
+	public <T> T get(HttpUrl url, BodyReader<T> reader) throws IOException {
+		return execute(newRequest(url).GET(), "GET", url, 0, reader);
+	}
+
+	@Override
+	public String postJson(HttpUrl url, String json) throws IOException {
+		return post(url, JSON, BodyPublishers.ofString(json, StandardCharsets.UTF_8), readTimeout,
+				JdkHttpTransport::readString);
+	}
+
+	@Override
+	public <T> T postJson(HttpUrl url, String json, BodyReader<T> reader) throws IOException {
+		return post(url, JSON, BodyPublishers.ofString(json, StandardCharsets.UTF_8), readTimeout, reader);
+	}
+
+	@Override
+	public String postJson(HttpUrl url, File json) throws IOException {
+		return post(url, JSON, BodyPublishers.ofFile(json.toPath()), readTimeout, JdkHttpTransport::readString);
+	}
+
+	@Override
+	public String postJson(HttpUrl url, InputStream json) throws IOException {
+		return post(url, JSON, BodyPublishers.ofInputStream(() -> new Unclosed(json)), readTimeout,
+				JdkHttpTransport::readString);
+	}
+
+	@Override
+	public String postJar(HttpUrl url, File jar, ProgressListener listener) throws IOException {
+		if (!jar.isFile())
+			throw new IOException("Not a file: " + jar);
+		return postJar(url, () -> {
+			try {
+				return new FileInputStream(jar);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}, jar.length(), listener);
+	}
+
+	@Override
+	public String postJar(HttpUrl url, InputStream jar, long length, ProgressListener listener) throws IOException {
+		return postJar(url, () -> new Unclosed(jar), length, listener);
+	}
+
+	@Override
+	public String delete(HttpUrl url) throws IOException {
+		return execute(newRequest(url).DELETE(), "DELETE", url, 0, JdkHttpTransport::readString);
+	}
+
+	@Override
+	public Reader openReader(HttpUrl url) throws IOException {
+		return execute(newRequest(url).GET(), "GET", url, 0, null);
+	}
+
+	@Override
+	public CompletableFuture<String> getAsync(HttpUrl url) {
+		return async(() -> get(url));
+	}
+
+	@Override
+	public CompletableFuture<String> postJsonAsync(HttpUrl url, String json) {
+		return async(() -> postJson(url, json));
+	}
+
+	@Override
+	public CompletableFuture<String> postJsonAsync(HttpUrl url, File json) {
+		return async(() -> postJson(url, json));
+	}
+
+	@Override
+	public CompletableFuture<String> postJsonAsync(HttpUrl url, InputStream json) {
+		return async(() -> postJson(url, json));
+	}
+
+	@Override
+	public CompletableFuture<String> postJarAsync(HttpUrl url, File jar, ProgressListener listener) {
+		return async(() -> postJar(url, jar, listener));
+	}
+
+	@Override
+	public CompletableFuture<String> postJarAsync(HttpUrl url, InputStream jar, long length,
+			ProgressListener listener) {
+		return async(() -> postJar(url, jar, length, listener));
+	}
+
+	@Override
+	public CompletableFuture<String> deleteAsync(HttpUrl url) {
+		return async(() -> delete(url));
+	}
+
+	@Override
+	public int maxRequestsPerHost() {
+		return maxRequestsPerHost;
+	}
+
+	public CircuitBreaker.State circuitState() {
+		return retry.circuitState();
+	}
+
+	/**
+	 * Aborts the requests in flight and stops the virtual threads of the
+	 * asynchronous calls.
+	 */
+	@Override
+	public void close() {
+		client.shutdownNow();
+		executor.shutdownNow();
+	}
+
+	private interface Call<T> {
+		T call() throws IOException;
+	}
+
+	private <T> CompletableFuture<T> async(Call<T> call) {
+		return CompletableFuture.supplyAsync(() -> {
+			try {
+				return call.call();
+			} catch (IOException e) {
+				throw new CompletionException(e);
+			}
+		}, executor);
+	}
+
+	private HttpRequest.Builder newRequest(HttpUrl url) {
+		return HttpRequest.newBuilder(url.uri()).header("Accept-Encoding", "gzip").timeout(readTimeout);
+	}
+
+	private <T> T post(HttpUrl url, String contentType, BodyPublisher body, Duration timeout, BodyReader<T> reader)
+			throws IOException {
+		HttpRequest.Builder request = newRequest(url).header("Content-Type", contentType).POST(body)
+				.timeout(timeout);
+		return execute(request, "POST", url, body.contentLength(), reader);
+	}
+
+	private String postJar(HttpUrl url, Supplier<InputStream> jar, long length,
+			ProgressListener listener) throws IOException {
+		BodyPublisher body = BodyPublishers.ofInputStream(
+				listener == null ? jar : () -> new Progress(jar.get(), length, listener));
+		if (length >= 0)
+			body = BodyPublishers.fromPublisher(body, length);
+		return post(url, JAR, body, writeTimeout, JdkHttpTransport::readString);
+	}
+
+	/**
+	 * Runs the attempts of a request, retrying failed GETs.
+	 *
+	 * @param reader reads a successful response, or null to return an open
+	 *        <code>Reader</code> of it
+	 */
+	private <T> T execute(HttpRequest.Builder builder, String method, HttpUrl url, long requestBytes,
+			BodyReader<T> reader) throws IOException {
+		HttpRequest request = builder.build();
+		return retry.execute(method, url, () -> attempt(request, method, url, Math.max(requestBytes, 0), reader));
+	}
+
+	@SuppressWarnings("unchecked")
+	private <T> T attempt(HttpRequest request, String method, HttpUrl url, long requestBytes, BodyReader<T> reader)
+			throws IOException {
+		try {
+			permits.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting to send " + method + " " + url);
+		}
+		try {
+			retry.allow(method, url);
+			long start = System.nanoTime();
+			HttpResponse<InputStream> response;
+			try {
+				response = retry.send(() -> client.send(request, info -> BodySubscribers.ofInputStream()),
+						HttpResponse::statusCode);
+			} catch (InterruptedException e) {
+				record(method, url, Metrics.NO_RESPONSE, start, requestBytes, 0);
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while sending " + method + " " + url);
+			} catch (IOException | RuntimeException e) {
+				record(method, url, Metrics.NO_RESPONSE, start, requestBytes, 0);
+				throw e;
+			}
+			int status = response.statusCode();
+			Counting received = new Counting(response.body());
+			Charset charset = charset(response);
+			if (status / 100 != 2) {
+				String text = null;
+				try (InputStream in = decode(response, received)) {
+					text = readString(in, charset);
+				} finally {
+					if (status >= 500)
+						retry.onServerError(text);
+				}
+				record(method, url, status, start, requestBytes, received.count);
+				String message = text.length() > MAX_ERROR_BODY ? text.substring(0, MAX_ERROR_BODY) + "..." : text;
+				throw new JobServerClientException(status, method + " " + url + " returned " + status + ": " + message,
+						text);
+			}
+			InputStream body = decode(response, received);
+			if (reader == null) {
+				record(method, url, status, start, requestBytes, response.headers()
+						.firstValueAsLong("Content-Length").orElse(0));
+				return (T) new InputStreamReader(body, charset);
+			}
+			try (InputStream in = body) {
+				T value = reader.read(in, charset);
+				record(method, url, status, start, requestBytes, received.count);
+				return value;
+			}
+		} finally {
+			permits.release();
+		}
+	}
+
+	private static String readString(InputStream body, Charset charset) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		body.transferTo(bytes);
+		return bytes.toString(charset);
+	}
+
+	private static InputStream decode(HttpResponse<?> response, InputStream body) throws IOException {
+		return "gzip".equalsIgnoreCase(response.headers().firstValue("Content-Encoding").orElse(null))
+				? new GZIPInputStream(body) : body;
+	}
+
+	private static Charset charset(HttpResponse<?> response) {
+		String type = response.headers().firstValue("Content-Type").orElse("");
+		int at = type.toLowerCase().indexOf("charset=");
+		if (at < 0)
+			return StandardCharsets.UTF_8;
+		String name = type.substring(at + "charset=".length()).split(";", 2)[0].trim().replace("\"", "");
+		try {
+			return Charset.forName(name);
+		} catch (IllegalCharsetNameException | UnsupportedCharsetException e) {
+			return StandardCharsets.UTF_8;
+		}
+	}
+
+	private void record(String method, HttpUrl url, int status, long start, long requestBytes, long responseBytes) {
+		if (metrics == Metrics.NONE)
+			return;
+		String endpoint = Http.endpoint(url);
+		metrics.recordRequest(Http.operation(method, endpoint), endpoint, status, System.nanoTime() - start,
+				requestBytes, responseBytes);
+	}
+
+	private static long orDefault(long value, long defaultValue) {
+		return value > 0 ? value : defaultValue;
+	}
+
+	/**
+	 * Counts the bytes received before decoding.
+	 */
+	private static class Counting extends FilterInputStream {
+		long count;
+
+		Counting(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if (b >= 0)
+				count++;
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int read = super.read(b, off, len);
+			if (read > 0)
+				count += read;
+			return read;
+		}
+	}
+
+	/**
+	 * Keeps a caller's stream open when the client closes the request body.
+	 */
+	private static class Unclosed extends FilterInputStream {
+		Unclosed(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+
+	/**
+	 * Reports the bytes of an upload as they are read by the client.
+	 */
+	private static class Progress extends FilterInputStream {
+		private final long length;
+		private final ProgressListener listener;
+		private long written;
+
+		Progress(InputStream in, long length, ProgressListener listener) {
+			super(in);
+			this.length = length;
+			this.listener = listener;
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if (b >= 0)
+				listener.onProgress(++written, length);
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int read = super.read(b, off, len);
+			if (read > 0) {
+				written += read;
+				listener.onProgress(written, length);
+			}
+			return read;
+		}
+	}
+}
@@ -0,0 +1,82 @@
+package spark.jobserver.client.jdk21;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import spark.jobserver.client.JobInfo;
+import spark.jobserver.client.JobServerClient;
+
+/**
+ * Runs each job on a virtual thread of its own, which starts it and waits for
+ * it with the blocking methods of the client. Tracking a job costs a virtual
+ * thread parked between polls instead of a platform thread, so the number of
+ * jobs followed at once is no longer bounded by a thread pool.
+ *
+ * <p>
+ * Use it with a client built on {@link JdkHttpTransport}, the OkHttp transport
+ * pins the carrier threads while it sends requests.
+ *
+ * <pre>
+ * try (VirtualThreadJobs jobs = new VirtualThreadJobs(client)) {
+ * 	CompletableFuture&lt;JobInfo&gt; done = jobs.run(data, params, 10, TimeUnit.MINUTES);
+ * }
+ * </pre>
+ */
+public class VirtualThreadJobs implements AutoCloseable {
+	private final JobServerClient client;
+	private final ExecutorService executor;
+
+	public VirtualThreadJobs(JobServerClient client) {
+		this.client = client;
+		this.executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("jobserver-job-", 0).factory());
+	}
+
+	/**
+	 * Starts the job with <code>POST /jobs</code> and waits until it is done.
+	 *
+	 * @return the final job, or a future failed with the error of the start or
+	 *         of the polls, or a <code>TimeoutException</code>
+	 */
+	public CompletableFuture<JobInfo> run(String data, Map<String, String> params, long timeout, TimeUnit unit) {
+		return submit(() -> {
+			JobInfo job = client.startJob(data, params);
+			return job.isRunning() ? client.awaitJob(job, timeout, unit) : job;
+		});
+	}
+
+	/**
+	 * Waits for a job started earlier. See
+	 * {@link JobServerClient#awaitJob(String, long, TimeUnit)}.
+	 */
+	public CompletableFuture<JobInfo> await(String jobId, long timeout, TimeUnit unit) {
+		return submit(() -> client.awaitJob(jobId, timeout, unit));
+	}
+
+	/**
+	 * Runs any blocking work on the client, such as a job followed by a
+	 * <code>getJobResult</code> with a typed result, on its own virtual thread.
+	 */
+	public <T> CompletableFuture<T> submit(Callable<T> job) {
+		return CompletableFuture.supplyAsync(() -> {
+			try {
+				return job.call();
+			} catch (Exception e) {
+				throw new CompletionException(e);
+			}
+		}, executor);
+	}
+
+	/**
+	 * Waits for the submitted jobs to be done and stops accepting new ones.
+	 * The client is not closed.
+	 */
+	@Override
+	public void close() {
+		executor.close();
+	}
+}
@@ -0,0 +1,93 @@
+package spark.jobserver.client.jdk21;
+
+import java.io.ByteArrayInputStream;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import junit.framework.Assert;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.GzipSink;
+import okio.Okio;
+import spark.jobserver.client.JobInfo;
+import spark.jobserver.client.JobServerClient;
+import spark.jobserver.client.JobServerClientException;
+import spark.jobserver.client.JobStatus;
+
+/**
+ * Tests a client sending its requests through the java.net.http transport,
+ * and jobs followed on virtual threads, against a mock job server.
+ */
+public class JdkHttpTransportTest {
+	private MockWebServer server;
+	private JobServerClient client;
+
+	@Before
+	public void setUp() throws Exception {
+		server = new MockWebServer();
+		server.start();
+		client = JobServerClient.builder().host(server.getHostName()).port(server.getPort())
+				.transport(JdkHttpTransport.builder().retryBackoffMillis(1).build()).build();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		client.close();
+		server.shutdown();
+	}
+
+	@Test
+	public void sendsRequests() throws Exception {
+		Buffer gzip = new Buffer();
+		try (BufferedSink sink = Okio.buffer(new GzipSink(gzip))) {
+			sink.writeUtf8("[\"a\",\"b\"]");
+		}
+		server.enqueue(new MockResponse().setHeader("Content-Encoding", "gzip").setBody(gzip));
+		server.enqueue(new MockResponse().setBody("{\"status\":\"STARTED\",\"jobId\":\"j1\"}"));
+		server.enqueue(new MockResponse().setBody("OK"));
+
+		Assert.assertEquals(2, client.getContexts().size());
+		Assert.assertEquals("j1", client.startJob(new ByteArrayInputStream("a = 1".getBytes()), new HashMap<>())
+				.getJobId());
+		Assert.assertEquals("OK", client.uploadJobJar(new ByteArrayInputStream(new byte[10]), 10, "app", null));
+
+		Assert.assertEquals("gzip", server.takeRequest().getHeader("Accept-Encoding"));
+		RecordedRequest start = server.takeRequest();
+		Assert.assertEquals("a = 1", start.getBody().readUtf8());
+		Assert.assertEquals(10, server.takeRequest().getBodySize());
+	}
+
+	@Test
+	public void retriesGetsAndReportsStatus() throws Exception {
+		server.enqueue(new MockResponse().setResponseCode(503));
+		server.enqueue(new MockResponse().setBody("[]"));
+		server.enqueue(new MockResponse().setResponseCode(404).setBody("No such context"));
+		Assert.assertEquals(0, client.getContexts().size());
+		try {
+			client.deleteContext("missing");
+			Assert.fail();
+		} catch (JobServerClientException e) {
+			Assert.assertEquals(404, e.getCode());
+			Assert.assertTrue(e.getMessage().contains("No such context"));
+		}
+	}
+
+	@Test
+	public void followsJobsOnVirtualThreads() throws Exception {
+		server.enqueue(new MockResponse().setBody("{\"status\":\"STARTED\",\"jobId\":\"j1\",\"classPath\":\"c\"}"));
+		server.enqueue(new MockResponse().setBody("{\"status\":\"RUNNING\",\"jobId\":\"j1\"}"));
+		server.enqueue(new MockResponse().setBody("{\"status\":\"FINISHED\",\"jobId\":\"j1\",\"result\":3}"));
+		try (VirtualThreadJobs jobs = new VirtualThreadJobs(client)) {
+			JobInfo job = jobs.run("a = 1", new HashMap<>(), 10, TimeUnit.SECONDS).get(10, TimeUnit.SECONDS);
+			Assert.assertEquals(JobStatus.FINISHED, job.getStatus());
+			Assert.assertEquals(3, job.getResult().getAsInt());
+		}
+	}
+}
@@ -0,0 +1,146 @@
+package spark.jobserver.client;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import lombok.*;
+
+/**
+ * Outcome of a batch of job submissions, one entry per submission in the
+ * order they were given. A failed submission does not abort the batch.
+ */
+@Getter
+public class BatchResult {
+	/**
+	 * Outcome of one submission: either the started job or the error.
+	 */
+	@Getter
+	@AllArgsConstructor(access = AccessLevel.PACKAGE)
+	public static class Entry {
+		private JobSubmission submission;
+		private JobInfo job;
+		private Throwable error;
+
+		public boolean isSucceeded() {
+			return error == null;
+		}
+	}
+
+	private final List<Entry> entries;
+	private final int succeeded;
+	private final int failed;
+	private final long elapsedMillis;
+
+	private BatchResult(List<Entry> entries, long elapsedMillis) {
+		this.entries = Collections.unmodifiableList(entries);
+		this.succeeded = (int) entries.stream().filter(Entry::isSucceeded).count();
+		this.failed = entries.size() - succeeded;
+		this.elapsedMillis = elapsedMillis;
+	}
+
+	/**
+	 * @return submissions handled per second, failed ones included
+	 */
+	public double getThroughputPerSecond() {
+		return elapsedMillis == 0 ? entries.size() * 1000.0 : entries.size() * 1000.0 / elapsedMillis;
+	}
+
+	/**
+	 * Starts the submissions keeping at most <code>concurrency</code> requests
+	 * in flight: each completed request starts the next pending one.
+	 */
+	static CompletableFuture<BatchResult> run(JobServerClient client, List<JobSubmission> submissions,
+			int concurrency) {
+		Batch batch = new Batch(client, submissions);
+		if (submissions.isEmpty())
+			batch.result.complete(new BatchResult(Collections.emptyList(), 0));
+		for (int i = 0; i < Math.min(Math.max(concurrency, 1), submissions.size()); i++)
+			batch.startNext();
+		return batch.result;
+	}
+
+	private static class Batch {
+		final CompletableFuture<BatchResult> result = new CompletableFuture<>();
+		final JobServerClient client;
+		final List<JobSubmission> submissions;
+		final AtomicReferenceArray<Entry> entries;
+		final AtomicInteger next = new AtomicInteger();
+		final AtomicInteger remaining;
+		final long start = System.nanoTime();
+
+		Batch(JobServerClient client, List<JobSubmission> submissions) {
+			this.client = client;
+			this.submissions = submissions;
+			this.entries = new AtomicReferenceArray<>(submissions.size());
+			this.remaining = new AtomicInteger(submissions.size());
+		}
+
+		/**
+		 * Starts pending submissions until one is still in flight; its completion
+		 * starts the next. Submissions failing at once, e.g. while the circuit
+		 * is open, are handled in this loop rather than by nested callbacks, so
+		 * the stack does not grow with the size of the batch. Nothing more is
+		 * started once the result is done, e.g. cancelled by the caller.
+		 */
+		void startNext() {
+			for (int i = next.getAndIncrement(); i < submissions.size(); i = next.getAndIncrement()) {
+				if (result.isDone())
+					return;
+				JobSubmission submission = submissions.get(i);
+				CompletableFuture<JobInfo> call;
+				try {
+					call = client.startJobAsync(submission.getData(), submission.getParams());
+				} catch (RuntimeException e) {
+					call = new CompletableFuture<>();
+					call.completeExceptionally(e);
+				}
+				if (!call.isDone()) {
+					int index = i;
+					call.whenComplete((job, e) -> {
+						if (!result.isDone() && done(index, submission, job, e))
+							startNext();
+					});
+					return;
+				}
+				JobInfo job = null;
+				Throwable error = null;
+				try {
+					job = call.join();
+				} catch (CompletionException | CancellationException e) {
+					error = e;
+				}
+				if (!done(i, submission, job, error))
+					return;
+			}
+		}
+
+		/**
+		 * @return false once the last submission is done
+		 */
+		boolean done(int i, JobSubmission submission, JobInfo job, Throwable e) {
+			entries.set(i, new Entry(submission, job, unwrap(e)));
+			if (remaining.decrementAndGet() > 0)
+				return true;
+			complete();
+			return false;
+		}
+
+		void complete() {
+			List<Entry> all = new ArrayList<>(submissions.size());
+			for (int i = 0; i < submissions.size(); i++)
+				all.add(entries.get(i));
+			result.complete(new BatchResult(all, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+		}
+	}
+
+	private static Throwable unwrap(Throwable e) {
+		return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+	}
+}
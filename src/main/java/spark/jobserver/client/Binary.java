@@ -2,15 +2,38 @@ package spark.jobserver.client;
 
 import java.util.Date;
 
+import com.google.gson.annotations.JsonAdapter;
 import com.google.gson.annotations.SerializedName;
 
 import lombok.*;
 import util.Pojo;
 
+@JsonAdapter(JsonAdapters.BinaryFactory.class)
 @Getter @Setter
 public class Binary extends Pojo{
 	@SerializedName("binary-type")  
 	private String binary_type;
-	@SerializedName("upload-time")  
-	private Date upload_time;
+	/**
+	 * Upload time in epoch millis, -1 if unknown.
+	 */
+	private long uploadTimeEpochMillis = Times.UNKNOWN;
+
+	/**
+	 * @return the upload time, or null if unknown. Prefer
+	 *         {@link #getUploadTimeEpochMillis()} which does not allocate.
+	 */
+	public Date getUpload_time() {
+		return uploadTimeEpochMillis < 0 ? null : new Date(uploadTimeEpochMillis);
+	}
+
+	public void setUpload_time(Date uploadTime) {
+		this.uploadTimeEpochMillis = uploadTime == null ? Times.UNKNOWN : uploadTime.getTime();
+	}
+
+	Binary copy() {
+		Binary copy = new Binary();
+		copy.binary_type = binary_type;
+		copy.uploadTimeEpochMillis = uploadTimeEpochMillis;
+		return copy;
+	}
 }
@@ -0,0 +1,110 @@
+package spark.jobserver.client;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Properties;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Local index of the binaries uploaded by this client, keyed by application
+ * name. Each entry records the SHA-256 of the uploaded jar and the upload time
+ * reported by the job server, which together tell whether the server copy is
+ * still the one we uploaded.
+ * 
+ * <p>
+ * When created with a file the index is persisted there after each change,
+ * otherwise it only lives as long as the client.
+ */
+@Slf4j
+class BinaryIndex {
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final File file;
+	private final Properties entries = new Properties();
+
+	BinaryIndex(File file) {
+		this.file = file;
+		if (file != null && file.isFile()) {
+			try (InputStream in = new FileInputStream(file)) {
+				entries.load(in);
+			} catch (IOException e) {
+				log.warn("Ignoring unreadable binary index {}", file, e);
+			}
+		}
+	}
+
+	/**
+	 * Judges whether the binary with the given hash was uploaded by us under
+	 * appName and the server still reports the same upload time for it. A
+	 * malformed entry, e.g. from a hand-edited file, is never current.
+	 */
+	synchronized boolean isCurrent(String appName, String sha256, Binary serverCopy) {
+		String entry = entries.getProperty(appName);
+		if (entry == null || serverCopy == null || serverCopy.getUploadTimeEpochMillis() < 0)
+			return false;
+		int comma = entry.indexOf(',');
+		if (comma < 0 || !entry.substring(0, comma).equals(sha256))
+			return false;
+		try {
+			return Long.parseLong(entry.substring(comma + 1).trim()) == serverCopy.getUploadTimeEpochMillis();
+		} catch (NumberFormatException e) {
+			return false;
+		}
+	}
+
+	synchronized void put(String appName, String sha256, long uploadTime) throws IOException {
+		entries.setProperty(appName, sha256 + "," + uploadTime);
+		save();
+	}
+
+	synchronized void remove(String appName) throws IOException {
+		if (entries.remove(appName) != null)
+			save();
+	}
+
+	/**
+	 * Computes the SHA-256 of a file without loading it into memory.
+	 * 
+	 * @return the hash as lower case hex
+	 */
+	static String sha256(File file) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		byte[] buffer = new byte[BUFFER_SIZE];
+		try (InputStream in = new DigestInputStream(new FileInputStream(file), digest)) {
+			while (in.read(buffer) != -1) {
+				// digest is updated while reading
+			}
+		}
+		StringBuilder hex = new StringBuilder(64);
+		for (byte b : digest.digest())
+			hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+		return hex.toString();
+	}
+
+	private void save() throws IOException {
+		if (file == null)
+			return;
+		File dir = file.getAbsoluteFile().getParentFile();
+		if (dir != null && !dir.isDirectory() && !dir.mkdirs())
+			throw new IOException("Cannot create directory " + dir);
+		File tmp = new File(dir, file.getName() + ".tmp");
+		try (OutputStream out = new FileOutputStream(tmp)) {
+			entries.store(out, "spark-jobserver-client binary index");
+		}
+		if (!tmp.renameTo(file) && !(file.delete() && tmp.renameTo(file)))
+			throw new IOException("Cannot write binary index " + file);
+	}
+}
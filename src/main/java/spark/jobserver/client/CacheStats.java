@@ -0,0 +1,34 @@
+package spark.jobserver.client;
+
+import lombok.*;
+import util.Pojo;
+
+/**
+ * Counters of the response cache of a {@link JobServerClient}, see
+ * {@link JobServerClient#getCacheStats()}.
+ */
+@Getter
+@AllArgsConstructor(access = AccessLevel.PACKAGE)
+public class CacheStats extends Pojo {
+	/**
+	 * Calls answered from the cache.
+	 */
+	private long hits;
+	/**
+	 * Calls that went to the job server.
+	 */
+	private long misses;
+	/**
+	 * Background reloads of contexts and binaries about to expire.
+	 */
+	private long refreshes;
+	/**
+	 * Job results and configs dropped to stay within the size bound.
+	 */
+	private long evictions;
+
+	public double getHitRate() {
+		long total = hits + misses;
+		return total == 0 ? 0 : (double) hits / total;
+	}
+}
@@ -0,0 +1,305 @@
+package spark.jobserver.client;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import lombok.Builder;
+import lombok.Singular;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Keeps pre-created Spark contexts warm so that jobs do not wait for a
+ * context to start.
+ * 
+ * <p>
+ * For each {@link ContextProfile} the pool keeps the configured number of idle
+ * contexts, created in the background through <code>POST /contexts</code>.
+ * Callers lease a context, run jobs in it and close the lease to give it back.
+ * A maintenance task checks the idle contexts against <code>GET /contexts</code>
+ * and replaces the ones that disappeared, tops the pool back up, and deletes
+ * idle contexts above the target once they stayed idle longer than
+ * <code>idleTtlMillis</code>.
+ * 
+ * <pre>
+ * ContextProfile small = new ContextProfile(2, "1g", 2);
+ * try (ContextPool pool = ContextPool.builder().client(client).profile(small, 3).build();
+ *      ContextPool.Lease lease = pool.lease(small)) {
+ *     JobInfo job = lease.startJob(data, params);
+ * }
+ * </pre>
+ */
+@Slf4j
+public class ContextPool implements Closeable {
+	public static final long DEFAULT_IDLE_TTL_MILLIS = TimeUnit.MINUTES.toMillis(10);
+	public static final long DEFAULT_MAINTENANCE_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(30);
+	public static final String DEFAULT_NAME_PREFIX = "pool-";
+
+	/**
+	 * A context leased from the pool. Closing it returns the context to the pool.
+	 */
+	public class Lease implements Closeable {
+		private final ContextProfile profile;
+		private final String contextName;
+		private boolean healthy = true;
+		private boolean closed;
+
+		private Lease(ContextProfile profile, String contextName) {
+			this.profile = profile;
+			this.contextName = contextName;
+		}
+
+		public String getContextName() {
+			return contextName;
+		}
+
+		/**
+		 * Starts a job in the leased context, see {@link JobServerClient#startJob(String, Map)}.
+		 */
+		public JobInfo startJob(String data, Map<String, String> params) throws IOException {
+			Map<String, String> withContext = params == null ? new HashMap<>() : new HashMap<>(params);
+			withContext.put(Constants.PARAM_CONTEXT, contextName);
+			return client.startJob(data, withContext);
+		}
+
+		/**
+		 * Marks the context as broken, it is deleted instead of being returned.
+		 */
+		public void markUnhealthy() {
+			healthy = false;
+		}
+
+		@Override
+		public synchronized void close() {
+			if (!closed) {
+				closed = true;
+				release(this);
+			}
+		}
+	}
+
+	private static class Idle {
+		final String name;
+		final long since = System.currentTimeMillis();
+
+		Idle(String name) {
+			this.name = name;
+		}
+	}
+
+	private final JobServerClient client;
+	private final Map<ContextProfile, Integer> targets;
+	private final long idleTtlMillis;
+	private final String namePrefix;
+	private final ScheduledExecutorService maintenance;
+	private final Map<ContextProfile, Deque<Idle>> idle = new HashMap<>();
+	private final Set<String> leased = new HashSet<>();
+	private final AtomicLong counter = new AtomicLong();
+	private volatile boolean closed;
+
+	/**
+	 * @param client the client creating the contexts
+	 * @param profiles number of warm contexts to keep per profile
+	 * @param idleTtlMillis idle time after which contexts above the target are deleted
+	 * @param maintenanceIntervalMillis interval of the health check and refill
+	 * @param namePrefix prefix of the context names, must begin with a letter
+	 */
+	@Builder
+	private ContextPool(JobServerClient client, @Singular Map<ContextProfile, Integer> profiles,
+			long idleTtlMillis, long maintenanceIntervalMillis, String namePrefix) {
+		this.client = client;
+		this.targets = profiles;
+		this.idleTtlMillis = idleTtlMillis > 0 ? idleTtlMillis : DEFAULT_IDLE_TTL_MILLIS;
+		this.namePrefix = namePrefix != null ? namePrefix : DEFAULT_NAME_PREFIX;
+		for (ContextProfile profile : profiles.keySet())
+			idle.put(profile, new ArrayDeque<>());
+		this.maintenance = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "jobserver-context-pool");
+			thread.setDaemon(true);
+			return thread;
+		});
+		long interval = maintenanceIntervalMillis > 0 ? maintenanceIntervalMillis
+				: DEFAULT_MAINTENANCE_INTERVAL_MILLIS;
+		maintenance.scheduleWithFixedDelay(this::maintain, 0, interval, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Leases a warm context of the profile, or creates one if none is idle.
+	 * 
+	 * @throws IOException error occurs when a context has to be created
+	 */
+	public Lease lease(ContextProfile profile) throws IOException {
+		if (closed)
+			throw new IllegalStateException("Context pool is closed");
+		String name = null;
+		synchronized (this) {
+			Deque<Idle> contexts = idle.get(profile);
+			if (contexts != null && !contexts.isEmpty())
+				name = contexts.pollFirst().name;
+		}
+		if (name == null)
+			name = create(profile);
+		synchronized (this) {
+			leased.add(name);
+		}
+		refill();
+		return new Lease(profile, name);
+	}
+
+	/**
+	 * @return number of idle contexts of the profile
+	 */
+	public synchronized int getIdleCount(ContextProfile profile) {
+		Deque<Idle> contexts = idle.get(profile);
+		return contexts == null ? 0 : contexts.size();
+	}
+
+	/**
+	 * @return number of contexts currently leased
+	 */
+	public synchronized int getLeasedCount() {
+		return leased.size();
+	}
+
+	/**
+	 * Stops the maintenance and deletes the idle contexts. Leased contexts are
+	 * deleted when their lease is closed.
+	 */
+	@Override
+	public void close() {
+		maintenance.shutdownNow();
+		List<String> names = new ArrayList<>();
+		synchronized (this) {
+			closed = true;
+			idle.values().forEach(contexts -> contexts.forEach(c -> names.add(c.name)));
+			idle.values().forEach(Deque::clear);
+		}
+		names.forEach(this::delete);
+	}
+
+	void maintain() {
+		if (closed)
+			return;
+		try {
+			long listedAt = System.currentTimeMillis();
+			dropLost(new HashSet<>(client.getContexts()), listedAt);
+		} catch (IOException | RuntimeException e) {
+			log.warn("Failed to list contexts, skipping health check", e);
+		}
+		reap();
+		topUp();
+	}
+
+	/**
+	 * Creates contexts until every profile has its target of idle contexts.
+	 * A context created while the pool is being closed is deleted again.
+	 */
+	private void topUp() {
+		for (Map.Entry<ContextProfile, Integer> target : targets.entrySet()) {
+			while (!closed && getIdleCount(target.getKey()) < target.getValue()) {
+				String name;
+				try {
+					name = create(target.getKey());
+				} catch (IOException | RuntimeException e) {
+					log.warn("Failed to create context for {}, retrying later", target.getKey(), e);
+					break;
+				}
+				boolean kept;
+				synchronized (this) {
+					kept = !closed;
+					if (kept)
+						idle.get(target.getKey()).addFirst(new Idle(name));
+				}
+				if (!kept)
+					delete(name);
+			}
+		}
+	}
+
+	/**
+	 * Forgets idle contexts the job server no longer has, so they get replaced.
+	 * Only contexts that were idle before the listing was requested are
+	 * dropped, a newer one may simply be missing from the listing.
+	 */
+	synchronized void dropLost(Set<String> live, long listedAt) {
+		for (Deque<Idle> contexts : idle.values()) {
+			contexts.removeIf(c -> {
+				if (live.contains(c.name) || c.since >= listedAt)
+					return false;
+				log.warn("Context {} is gone, replacing it", c.name);
+				return true;
+			});
+		}
+	}
+
+	/**
+	 * Deletes the idle contexts above the target that stayed idle past the TTL.
+	 * The least recently used ones are at the end of each deque.
+	 */
+	private void reap() {
+		List<String> expired = new ArrayList<>();
+		long now = System.currentTimeMillis();
+		synchronized (this) {
+			for (Map.Entry<ContextProfile, Deque<Idle>> e : idle.entrySet()) {
+				Deque<Idle> contexts = e.getValue();
+				int target = targets.get(e.getKey());
+				while (contexts.size() > target && now - contexts.peekLast().since > idleTtlMillis)
+					expired.add(contexts.pollLast().name);
+			}
+		}
+		expired.forEach(this::delete);
+	}
+
+	private void release(Lease lease) {
+		boolean keep;
+		synchronized (this) {
+			leased.remove(lease.contextName);
+			keep = lease.healthy && !closed && idle.containsKey(lease.profile);
+			if (keep)
+				idle.get(lease.profile).addFirst(new Idle(lease.contextName));
+		}
+		if (!keep) {
+			delete(lease.contextName);
+			refill();
+		}
+	}
+
+	/**
+	 * Tops the pool up in the background without listing the contexts, the
+	 * health check is left to the scheduled maintenance.
+	 */
+	private void refill() {
+		try {
+			maintenance.execute(this::topUp);
+		} catch (RejectedExecutionException e) {
+			// closed
+		}
+	}
+
+	private String create(ContextProfile profile) throws IOException {
+		String name = namePrefix + profile.tag() + counter.incrementAndGet();
+		client.createContext(name, profile.toParams());
+		log.info("Created context {}", name);
+		return name;
+	}
+
+	private void delete(String name) {
+		try {
+			client.deleteContext(name);
+		} catch (IOException | RuntimeException e) {
+			log.warn("Failed to delete context {}", name, e);
+		}
+	}
+}
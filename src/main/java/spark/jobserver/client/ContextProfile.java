@@ -0,0 +1,48 @@
+package spark.jobserver.client;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import lombok.Value;
+
+/**
+ * Resources of a Spark context, used to key the warm contexts of a {@link ContextPool}.
+ * Null values are left to the job server defaults.
+ */
+@Value
+public class ContextProfile {
+	/**
+	 * Value of <code>Constants.PARAM_NUM_CPU_CORES</code>.
+	 */
+	Integer cpuCores;
+	/**
+	 * Value of <code>Constants.PARAM_MEM_PER_NODE</code>, such as 512m.
+	 */
+	String memPerNode;
+	/**
+	 * Value of <code>Constants.PARAM_NUM_EXECUTORS</code>.
+	 */
+	Integer numExecutors;
+
+	/**
+	 * @return the parameters of <code>POST /contexts/&lt;name&gt;</code> for this profile
+	 */
+	public Map<String, String> toParams() {
+		Map<String, String> params = new HashMap<>();
+		if (cpuCores != null)
+			params.put(Constants.PARAM_NUM_CPU_CORES, cpuCores.toString());
+		if (memPerNode != null)
+			params.put(Constants.PARAM_MEM_PER_NODE, memPerNode);
+		if (numExecutors != null)
+			params.put(Constants.PARAM_NUM_EXECUTORS, numExecutors.toString());
+		return params;
+	}
+
+	/**
+	 * @return a short tag usable in context names, such as <code>2c-1g-3e</code>
+	 */
+	String tag() {
+		return (cpuCores == null ? "" : cpuCores + "c-") + (memPerNode == null ? "" : memPerNode + "-")
+				+ (numExecutors == null ? "" : numExecutors + "e-");
+	}
+}
@@ -0,0 +1,58 @@
+package spark.jobserver.client;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.reflect.Type;
+import java.nio.charset.Charset;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
+
+import util.Pojo;
+
+/**
+ * {@link ResultCodec} reading the body with a Gson <code>JsonReader</code>.
+ * This is the default codec of the client.
+ */
+public class GsonResultCodec implements ResultCodec {
+	private final Gson gson;
+
+	/**
+	 * Binds results with the Gson instance of the client.
+	 */
+	public GsonResultCodec() {
+		this(Pojo.gson);
+	}
+
+	/**
+	 * @param gson binds the results, e.g. with adapters of the result types
+	 */
+	public GsonResultCodec(Gson gson) {
+		this.gson = gson;
+	}
+
+	@Override
+	public <T> JobResult<T> decode(InputStream body, Charset charset, Type resultType) throws IOException {
+		JsonReader reader = new JsonReader(new InputStreamReader(body, charset));
+		JsonObject envelope = new JsonObject();
+		T result = null;
+		reader.beginObject();
+		while (reader.hasNext()) {
+			String name = reader.nextName();
+			if ("result".equals(name) && !isError(envelope))
+				result = gson.fromJson(reader, resultType);
+			else
+				envelope.add(name, gson.fromJson(reader, JsonElement.class));
+		}
+		reader.endObject();
+		return JobResult.of(envelope, result);
+	}
+
+	static boolean isError(JsonObject envelope) {
+		JsonElement status = envelope.get("status");
+		return status != null && status.isJsonPrimitive() && JobStatus.ERROR.name().equals(status.getAsString());
+	}
+}
@@ -0,0 +1,56 @@
+package spark.jobserver.client;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.reflect.Type;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import util.Pojo;
+
+/**
+ * {@link ResultCodec} binding results with a Jackson <code>ObjectMapper</code>,
+ * for result types annotated for Jackson. Jackson is an optional dependency,
+ * only needed when this class is used.
+ */
+public class JacksonResultCodec implements ResultCodec {
+	private final ObjectMapper mapper;
+
+	public JacksonResultCodec() {
+		this(new ObjectMapper());
+	}
+
+	public JacksonResultCodec(ObjectMapper mapper) {
+		this.mapper = mapper;
+	}
+
+	@Override
+	public <T> JobResult<T> decode(InputStream body, Charset charset, Type resultType) throws IOException {
+		JavaType type = mapper.getTypeFactory().constructType(resultType);
+		JsonObject envelope = new JsonObject();
+		T result = null;
+		// UTF-8 is parsed from the bytes, skipping the decoding to chars
+		try (JsonParser parser = StandardCharsets.UTF_8.equals(charset) ? mapper.getFactory().createParser(body)
+				: mapper.getFactory().createParser(new InputStreamReader(body, charset))) {
+			if (parser.nextToken() != JsonToken.START_OBJECT)
+				throw new IOException("Expected a job object but was " + parser.currentToken());
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				String name = parser.getCurrentName();
+				parser.nextToken();
+				if ("result".equals(name) && !GsonResultCodec.isError(envelope))
+					result = mapper.readValue(parser, type);
+				else
+					envelope.add(name, Pojo.gson.fromJson(mapper.readTree(parser).toString(), JsonElement.class));
+			}
+		}
+		return JobResult.of(envelope, result);
+	}
+}
@@ -19,6 +19,8 @@ package spark.jobserver.client;
 import java.util.HashMap;
 import java.util.Map;
 
+import com.google.gson.annotations.JsonAdapter;
+
 import lombok.*;
 import util.Pojo;
 
@@ -34,6 +36,7 @@ import util.Pojo;
  *
  */
 
+@JsonAdapter(JsonAdapters.JobConfigFactory.class)
 @Getter @Setter
 public class JobConfig extends Pojo{
 	private Map<String, Object> configs = new HashMap<String, Object>();
@@ -41,4 +44,10 @@ public class JobConfig extends Pojo{
 	void putConfigItem(String key, Object value) {
 		this.configs.put(key, value);
 	}
+
+	JobConfig copy() {
+		JobConfig copy = new JobConfig();
+		copy.configs.putAll(configs);
+		return copy;
+	}
 }
@@ -0,0 +1,444 @@
+package spark.jobserver.client;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Local history of jobs built from successive <code>GET /jobs</code> snapshots,
+ * which only list the last jobs of the server.
+ * 
+ * <p>
+ * Jobs are keyed by jobId; a snapshot only changes the jobs that are new or
+ * whose status, duration or other fields changed. Jobs are indexed in memory by
+ * context, classPath, status and start time, so that queries such as
+ * "running jobs in context X" do not go to the server:
+ * 
+ * <pre>
+ * history.sync(client);
+ * List&lt;JobInfo&gt; running = history.query().context("x").status(JobStatus.RUNNING).list();
+ * long p95 = history.query().classPath("y").startedBetween(today, null).durationPercentileMillis(95);
+ * </pre>
+ * 
+ * <p>
+ * When created with a file, each change is appended to it as a JSON line and
+ * the history is replayed from it on creation. The file is rewritten without
+ * superseded lines once they outnumber the jobs. Results are not kept.
+ */
+@Slf4j
+public class JobHistory implements Closeable {
+	private static final int MIN_COMPACT_LINES = 1000;
+
+	private final File file;
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	private final Map<String, JobInfo> jobs = new HashMap<>();
+	private final Map<String, Set<String>> byContext = new HashMap<>();
+	private final Map<String, Set<String>> byClassPath = new HashMap<>();
+	private final Map<JobStatus, Set<String>> byStatus = new EnumMap<>(JobStatus.class);
+	private final NavigableMap<Long, Set<String>> byStartTime = new TreeMap<>();
+	private Writer writer;
+	private int lines;
+
+	/**
+	 * Creates a history kept in memory only.
+	 */
+	public JobHistory() {
+		this.file = null;
+	}
+
+	/**
+	 * Creates a history persisted to the file, replaying it if it exists.
+	 * 
+	 * @throws IOException the file cannot be read or opened for appending
+	 */
+	public JobHistory(File file) throws IOException {
+		this.file = file;
+		if (file.isFile()) {
+			try (BufferedReader in = new BufferedReader(
+					new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+				String line;
+				while ((line = in.readLine()) != null) {
+					lines++;
+					try {
+						put(read(line));
+					} catch (IOException | RuntimeException e) {
+						log.warn("Skipping unreadable line {} of job history {}", lines, file);
+					}
+				}
+			}
+		}
+		openWriter();
+	}
+
+	/**
+	 * Fetches <code>GET /jobs</code> and ingests it.
+	 * 
+	 * @return number of jobs that were new or changed
+	 */
+	public int sync(JobServerClient client) throws IOException {
+		return ingest(client.getJobs());
+	}
+
+	/**
+	 * Adds new jobs and updates changed ones. Jobs without jobId are ignored.
+	 * 
+	 * @return number of jobs that were new or changed
+	 */
+	public int ingest(Collection<JobInfo> snapshot) throws IOException {
+		int changed = 0;
+		lock.writeLock().lock();
+		try {
+			for (JobInfo job : snapshot) {
+				if (job.getJobId() == null || same(jobs.get(job.getJobId()), job))
+					continue;
+				JobInfo record = job.copy();
+				record.setResult(null);
+				put(record);
+				changed++;
+				if (writer != null) {
+					writer.write(write(record));
+					writer.write('\n');
+					lines++;
+				}
+			}
+			if (writer != null && changed > 0) {
+				writer.flush();
+				if (lines >= MIN_COMPACT_LINES && lines > 2 * jobs.size())
+					compact();
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+		return changed;
+	}
+
+	/**
+	 * @return the job, or null if it is not in the history
+	 */
+	public JobInfo get(String jobId) {
+		lock.readLock().lock();
+		try {
+			JobInfo job = jobs.get(jobId);
+			return job == null ? null : job.copy();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return jobs.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return a query matching all jobs, narrowed by its methods
+	 */
+	public Query query() {
+		return new Query();
+	}
+
+	@Override
+	public void close() throws IOException {
+		lock.writeLock().lock();
+		try {
+			if (writer != null) {
+				writer.close();
+				writer = null;
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Criteria over the indexes of the history. Unset criteria match any job.
+	 */
+	public class Query {
+		private String context;
+		private String classPath;
+		private Set<JobStatus> statuses;
+		private Long from;
+		private Long to;
+
+		private Query() {
+		}
+
+		public Query context(String context) {
+			this.context = context;
+			return this;
+		}
+
+		public Query classPath(String classPath) {
+			this.classPath = classPath;
+			return this;
+		}
+
+		public Query status(JobStatus... statuses) {
+			this.statuses = EnumSet.noneOf(JobStatus.class);
+			this.statuses.addAll(Arrays.asList(statuses));
+			return this;
+		}
+
+		/**
+		 * @param from earliest start time, inclusive, or null
+		 * @param to latest start time, exclusive, or null
+		 */
+		public Query startedBetween(Date from, Date to) {
+			this.from = from == null ? null : from.getTime();
+			this.to = to == null ? null : to.getTime();
+			return this;
+		}
+
+		/**
+		 * @return the matching jobs, most recently started first
+		 */
+		public List<JobInfo> list() {
+			List<JobInfo> matches = new ArrayList<>();
+			lock.readLock().lock();
+			try {
+				for (JobInfo job : matches())
+					matches.add(job.copy());
+			} finally {
+				lock.readLock().unlock();
+			}
+			matches.sort(Comparator.comparingLong(JobInfo::getStartTimeEpochMillis).reversed());
+			return matches;
+		}
+
+		public int count() {
+			lock.readLock().lock();
+			try {
+				return matches().size();
+			} finally {
+				lock.readLock().unlock();
+			}
+		}
+
+		/**
+		 * @param percentile between 0 and 100, such as 95
+		 * @return the duration below which the given percentage of the matching
+		 *         jobs with a duration fall, or -1 if none has one
+		 */
+		public long durationPercentileMillis(double percentile) {
+			long[] durations;
+			lock.readLock().lock();
+			try {
+				durations = matches().stream().mapToLong(JobInfo::getDurationMillis).filter(d -> d >= 0).toArray();
+			} finally {
+				lock.readLock().unlock();
+			}
+			if (durations.length == 0)
+				return -1;
+			Arrays.sort(durations);
+			int rank = (int) Math.ceil(percentile / 100 * durations.length);
+			return durations[Math.min(Math.max(rank, 1), durations.length) - 1];
+		}
+
+		/**
+		 * Scans the smallest candidate set given by the indexes, checking the
+		 * other criteria on each job. Called under the read lock.
+		 */
+		private List<JobInfo> matches() {
+			Collection<String> candidates = null;
+			if (context != null)
+				candidates = smaller(candidates, byContext.getOrDefault(context, Collections.emptySet()));
+			if (classPath != null)
+				candidates = smaller(candidates, byClassPath.getOrDefault(classPath, Collections.emptySet()));
+			if (statuses != null) {
+				Set<String> ids = new HashSet<>();
+				for (JobStatus status : statuses)
+					ids.addAll(byStatus.getOrDefault(status, Collections.emptySet()));
+				candidates = smaller(candidates, ids);
+			}
+			if (from != null || to != null) {
+				Collection<String> ids = new ArrayList<>();
+				startTimes().values().forEach(ids::addAll);
+				candidates = smaller(candidates, ids);
+			}
+			List<JobInfo> matches = new ArrayList<>();
+			for (String jobId : candidates != null ? candidates : jobs.keySet()) {
+				JobInfo job = jobs.get(jobId);
+				if (matches(job))
+					matches.add(job);
+			}
+			return matches;
+		}
+
+		private boolean matches(JobInfo job) {
+			if (context != null && !context.equals(job.getContext()))
+				return false;
+			if (classPath != null && !classPath.equals(job.getClassPath()))
+				return false;
+			if (statuses != null && !statuses.contains(job.getStatus()))
+				return false;
+			if (from != null || to != null) {
+				long start = job.getStartTimeEpochMillis();
+				return start >= 0 && (from == null || start >= from) && (to == null || start < to);
+			}
+			return true;
+		}
+
+		private NavigableMap<Long, Set<String>> startTimes() {
+			if (from != null && to != null)
+				return byStartTime.subMap(from, true, to, false);
+			return from != null ? byStartTime.tailMap(from, true) : byStartTime.headMap(to, false);
+		}
+
+		private Collection<String> smaller(Collection<String> current, Collection<String> ids) {
+			return current == null || ids.size() < current.size() ? ids : current;
+		}
+	}
+
+	private static boolean same(JobInfo stored, JobInfo job) {
+		return stored != null && stored.getStatus() == job.getStatus()
+				&& Objects.equals(stored.getDuration(), job.getDuration())
+				&& Objects.equals(stored.getContext(), job.getContext())
+				&& Objects.equals(stored.getClassPath(), job.getClassPath())
+				&& stored.getStartTimeEpochMillis() == job.getStartTimeEpochMillis();
+	}
+
+	private void put(JobInfo job) {
+		JobInfo old = jobs.put(job.getJobId(), job);
+		if (old != null) {
+			unindex(byContext, old.getContext(), old);
+			unindex(byClassPath, old.getClassPath(), old);
+			unindex(byStatus, old.getStatus(), old);
+			unindex(byStartTime, startTime(old), old);
+		}
+		index(byContext, job.getContext(), job);
+		index(byClassPath, job.getClassPath(), job);
+		index(byStatus, job.getStatus(), job);
+		index(byStartTime, startTime(job), job);
+	}
+
+	private static Long startTime(JobInfo job) {
+		return job.getStartTimeEpochMillis() < 0 ? null : job.getStartTimeEpochMillis();
+	}
+
+	private static <K> void index(Map<K, Set<String>> index, K key, JobInfo job) {
+		if (key != null)
+			index.computeIfAbsent(key, k -> new HashSet<>()).add(job.getJobId());
+	}
+
+	private static <K> void unindex(Map<K, Set<String>> index, K key, JobInfo job) {
+		if (key == null)
+			return;
+		Set<String> ids = index.get(key);
+		if (ids != null && ids.remove(job.getJobId()) && ids.isEmpty())
+			index.remove(key);
+	}
+
+	/**
+	 * Rewrites the file with one line per job. Called under the write lock.
+	 * The new file replaces the old one atomically, and the writer is reopened
+	 * even if the rewrite fails so that later changes are still appended.
+	 */
+	private void compact() throws IOException {
+		writer.close();
+		File tmp = new File(file.getAbsoluteFile().getParentFile(), file.getName() + ".tmp");
+		try {
+			try (Writer out = new BufferedWriter(
+					new OutputStreamWriter(new FileOutputStream(tmp), StandardCharsets.UTF_8))) {
+				for (JobInfo job : jobs.values()) {
+					out.write(write(job));
+					out.write('\n');
+				}
+			}
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+			lines = jobs.size();
+		} finally {
+			openWriter();
+		}
+	}
+
+	private void openWriter() throws IOException {
+		File dir = file.getAbsoluteFile().getParentFile();
+		if (dir != null && !dir.isDirectory() && !dir.mkdirs())
+			throw new IOException("Cannot create directory " + dir);
+		writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * One line per job, with the start time in epoch millis.
+	 */
+	private static String write(JobInfo job) throws IOException {
+		StringWriter line = new StringWriter();
+		try (JsonWriter out = new JsonWriter(line)) {
+			out.beginObject();
+			out.name("jobId").value(job.getJobId());
+			out.name("status").value(job.getStatus() == null ? null : job.getStatus().name());
+			out.name("context").value(job.getContext());
+			out.name("classPath").value(job.getClassPath());
+			out.name("duration").value(job.getDuration());
+			out.name("startTime").value(job.getStartTimeEpochMillis() < 0 ? null : job.getStartTimeEpochMillis());
+			out.endObject();
+		}
+		return line.toString();
+	}
+
+	private static JobInfo read(String line) throws IOException {
+		JobInfo job = new JobInfo();
+		try (JsonReader in = new JsonReader(new StringReader(line))) {
+			in.beginObject();
+			while (in.hasNext()) {
+				String name = in.nextName();
+				if (in.peek() == JsonToken.NULL) {
+					in.nextNull();
+					continue;
+				}
+				switch (name) {
+				case "jobId":
+					job.setJobId(in.nextString());
+					break;
+				case "status":
+					job.setStatus(JobStatus.valueOf(in.nextString()));
+					break;
+				case "context":
+					job.setContext(in.nextString());
+					break;
+				case "classPath":
+					job.setClassPath(in.nextString());
+					break;
+				case "duration":
+					job.setDuration(in.nextString());
+					break;
+				case "startTime":
+					job.setStartTimeEpochMillis(in.nextLong());
+					break;
+				default:
+					in.skipValue();
+				}
+			}
+			in.endObject();
+		}
+		if (job.getJobId() == null)
+			throw new IOException("Missing jobId");
+		return job;
+	}
+}
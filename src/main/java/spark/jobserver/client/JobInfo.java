@@ -19,7 +19,9 @@ package spark.jobserver.client;
 import java.util.Date;
 
 import com.google.gson.JsonElement;
+import com.google.gson.annotations.JsonAdapter;
 
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 import util.Pojo;
@@ -29,6 +31,7 @@ import util.Pojo;
  * <code>GET /jobs/&lt;jobId&gt;</code> to a spark job server.
  * 
  */
+@JsonAdapter(JsonAdapters.JobInfoFactory.class)
 @Getter @Setter
 public class JobInfo extends Pojo {
 	private String jobId;
@@ -36,9 +39,38 @@ public class JobInfo extends Pojo {
 	private String context;
 	private String classPath;
 	private String duration;
-	private Date startTime;
+	/**
+	 * Duration parsed from {@link #getDuration()}, -1 if unknown.
+	 */
+	@Setter(AccessLevel.NONE)
+	private long durationMillis = Times.UNKNOWN;
+	/**
+	 * Start time in epoch millis, -1 if unknown.
+	 */
+	private long startTimeEpochMillis = Times.UNKNOWN;
 	private JsonElement result;  //we do not know its class type 
 
+	/**
+	 * Sets the duration as reported by the server, such as
+	 * <code>"12.345 secs"</code>, and {@link #getDurationMillis()}.
+	 */
+	public void setDuration(String duration) {
+		this.duration = duration;
+		this.durationMillis = Times.parseDurationMillis(duration);
+	}
+
+	/**
+	 * @return the start time, or null if unknown. Prefer
+	 *         {@link #getStartTimeEpochMillis()} which does not allocate.
+	 */
+	public Date getStartTime() {
+		return startTimeEpochMillis < 0 ? null : new Date(startTimeEpochMillis);
+	}
+
+	public void setStartTime(Date startTime) {
+		this.startTimeEpochMillis = startTime == null ? Times.UNKNOWN : startTime.getTime();
+	}
+
 	/**
 	 * Judges current <code>JobResult</code> instance represents the 
 	 * status information of a asynchronous running spark job or not.
@@ -66,8 +98,29 @@ public class JobInfo extends Pojo {
 	 * Judges the queried target job doesn't exist or not.
 	 * 
 	 * @return true indicates the related job doesn't exist, false otherwise
+	 * @deprecated an unknown job is reported by a
+	 *             <code>JobServerClientException</code> with code 404, so a
+	 *             job returned by the client is never an unknown one
 	 */
+	@Deprecated
 	public boolean jobNotExists() {
 		return getStatus() == JobStatus.ERROR && getResult().toString().contains("No such job ID");
 	}
+
+	/**
+	 * @return a copy of this job for callers sharing one response, the result
+	 *         element itself is shared
+	 */
+	JobInfo copy() {
+		JobInfo copy = new JobInfo();
+		copy.jobId = jobId;
+		copy.status = status;
+		copy.context = context;
+		copy.classPath = classPath;
+		copy.duration = duration;
+		copy.durationMillis = durationMillis;
+		copy.startTimeEpochMillis = startTimeEpochMillis;
+		copy.result = result;
+		return copy;
+	}
 }
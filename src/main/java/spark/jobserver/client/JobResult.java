@@ -0,0 +1,34 @@
+package spark.jobserver.client;
+
+import static util.Pojo.gson;
+
+import com.google.gson.JsonObject;
+
+import lombok.*;
+import util.Pojo;
+
+/**
+ * Job information with its <code>result</code> bound to a type by a
+ * {@link ResultCodec}, see {@link JobServerClient#getJobResult(String, Class)}.
+ */
+@Getter
+@AllArgsConstructor(access = AccessLevel.PACKAGE)
+public class JobResult<T> extends Pojo {
+	/**
+	 * Status and other fields of the job. Its own result is only set when the
+	 * job failed, and holds the error.
+	 */
+	private JobInfo job;
+	/**
+	 * The result bound to the requested type, or null if the job failed or is
+	 * not done.
+	 */
+	private T result;
+
+	/**
+	 * @param envelope the fields of the response other than a successful result
+	 */
+	static <T> JobResult<T> of(JsonObject envelope, T result) {
+		return new JobResult<>(gson.fromJson(envelope, JobInfo.class), result);
+	}
+}
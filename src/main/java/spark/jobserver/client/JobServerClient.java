@@ -19,16 +19,36 @@ package spark.jobserver.client;
 import static util.Pojo.gson;
 
 import java.io.*;
+import java.lang.reflect.Type;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
 import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 
 import lombok.*;
+import okhttp3.HttpUrl;
 import util.Http;
+import util.JsonArrayIterator;
+import util.Metrics;
+import util.ProgressListener;
+import util.Transport;
 
-import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.IOUtils;
-import org.apache.commons.lang3.StringUtils;
 
 
 /**
@@ -38,23 +58,171 @@ import org.apache.commons.lang3.StringUtils;
  */
 @Getter
 @Setter
-@Builder
-public class JobServerClient {
+public class JobServerClient implements Closeable {
+	private static final Type CONTEXTS_TYPE = new TypeToken<ArrayList<String>>() {
+	}.getType();
+	private static final Type JOBS_TYPE = new TypeToken<ArrayList<JobInfo>>() {
+	}.getType();
+
 	private String host;
 	private int port;
+	@Getter(AccessLevel.NONE)
+	@Setter(AccessLevel.NONE)
+	private volatile HttpUrl baseUrl;
+	@Getter(AccessLevel.NONE)
+	@Setter(AccessLevel.NONE)
+	private final Transport http;
+	@Setter(AccessLevel.NONE)
+	private final Executor callbackExecutor;
+	@Getter(AccessLevel.NONE)
+	@Setter(AccessLevel.NONE)
+	private final BinaryIndex binaryIndex;
+	@Getter(AccessLevel.NONE)
+	@Setter(AccessLevel.NONE)
+	private final ScheduledExecutorService scheduler;
+	@Getter(AccessLevel.NONE)
+	@Setter(AccessLevel.NONE)
+	private final boolean ownsScheduler;
+	@Getter(AccessLevel.NONE)
+	@Setter(AccessLevel.NONE)
+	private final JobWaiter waiter;
+	@Getter(AccessLevel.NONE)
+	@Setter(AccessLevel.NONE)
+	private final ResponseCache cache;
+	@Getter(AccessLevel.NONE)
+	@Setter(AccessLevel.NONE)
+	private final SingleFlight flights = new SingleFlight();
+	@Getter(AccessLevel.NONE)
+	@Setter(AccessLevel.NONE)
+	private final AtomicLong writes = new AtomicLong();
+	@Getter(AccessLevel.NONE)
+	@Setter(AccessLevel.NONE)
+	private final Metrics metrics;
+	@Getter(AccessLevel.NONE)
+	@Setter(AccessLevel.NONE)
+	private final ResultCodec resultCodec;
+
+	/**
+	 * Creates a client with its own connection pool. Pool, timeout, retry and
+	 * circuit breaker settings left unset (zero) fall back to the defaults in
+	 * {@link Http}.
+	 *
+	 * @param host job server host
+	 * @param port job server port
+	 * @param maxIdleConnections max idle connections kept in the pool
+	 * @param keepAliveMillis how long an idle connection is kept in the pool
+	 * @param maxRequests max concurrent requests of this client
+	 * @param maxRequestsPerHost max concurrent requests to the job server
+	 * @param connectTimeoutMillis connect timeout
+	 * @param readTimeoutMillis read timeout
+	 * @param writeTimeoutMillis write timeout
+	 * @param maxRetries retries of a failed GET, negative to disable retries
+	 * @param retryBackoffMillis base delay before the first retry, doubled on each retry
+	 * @param deadlineMillis overall time budget of a GET including its retries
+	 * @param failureThreshold consecutive failures after which calls fail fast,
+	 *        negative to disable the circuit breaker
+	 * @param openMillis how long calls fail fast before the job server is tried again
+	 * @param callbackExecutor executor completing the futures of the <code>*Async</code>
+	 *        methods, or null to complete them on the http dispatcher threads
+	 * @param binaryIndexFile file persisting hashes of the binaries uploaded through
+	 *        {@link #uploadJobJarIfChanged(File, String)}, or null to keep them in memory
+	 * @param scheduler scheduler running the polls of {@link #awaitJobAsync(String, long, TimeUnit)},
+	 *        or null to use a single daemon thread owned by this client
+	 * @param cacheTtlMillis how long the lists of contexts and binaries are cached,
+	 *        0 to not cache them
+	 * @param resultCacheSize max results and configs of done jobs kept in memory,
+	 *        0 to not cache them
+	 * @param metrics receives request timings, byte counts, retries, parse times
+	 *        and connection pool gauges, or null
+	 * @param requestLogSampleRate fraction of successful requests written at
+	 *        DEBUG to the request log of {@link Http}, 0 for all of them and
+	 *        negative for none; failed requests are always logged at INFO
+	 * @param compressRequestsOverBytes <code>startJob</code> data of at least
+	 *        this many characters is sent gzip-compressed, 0 to never compress
+	 *        it. Compression stops if the job server answers 415
+	 * @param resultCodec binds the results of the typed <code>getJobResult</code>
+	 *        and <code>startJob</code> methods, or null for {@link GsonResultCodec}
+	 * @param transport sends the requests, or null for an {@link Http} built from
+	 *        the settings above. A given transport is used as configured, the
+	 *        pool, timeout, retry, circuit breaker, log and compression settings
+	 *        are ignored, and it is closed with this client
+	 */
+	@Builder
+	private JobServerClient(String host, int port, int maxIdleConnections, long keepAliveMillis, int maxRequests,
+			int maxRequestsPerHost, long connectTimeoutMillis, long readTimeoutMillis, long writeTimeoutMillis,
+			int maxRetries, long retryBackoffMillis, long deadlineMillis, int failureThreshold, long openMillis,
+			Executor callbackExecutor, File binaryIndexFile, ScheduledExecutorService scheduler, long cacheTtlMillis,
+			int resultCacheSize, Metrics metrics, double requestLogSampleRate, int compressRequestsOverBytes,
+			ResultCodec resultCodec, Transport transport) {
+		this.host = host;
+		this.port = port;
+		this.callbackExecutor = callbackExecutor;
+		this.binaryIndex = new BinaryIndex(binaryIndexFile);
+		this.ownsScheduler = scheduler == null;
+		this.scheduler = scheduler != null ? scheduler : Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "jobserver-client-scheduler");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.waiter = new JobWaiter(this, this.scheduler);
+		this.metrics = metrics != null ? metrics : Metrics.NONE;
+		this.resultCodec = resultCodec != null ? resultCodec : new GsonResultCodec();
+		this.http = transport != null ? transport
+				: Http.builder().maxIdleConnections(maxIdleConnections).keepAliveMillis(keepAliveMillis)
+				.maxRequests(maxRequests).maxRequestsPerHost(maxRequestsPerHost)
+				.connectTimeoutMillis(connectTimeoutMillis).readTimeoutMillis(readTimeoutMillis)
+				.writeTimeoutMillis(writeTimeoutMillis).maxRetries(maxRetries).retryBackoffMillis(retryBackoffMillis)
+				.deadlineMillis(deadlineMillis).failureThreshold(failureThreshold).openMillis(openMillis)
+				.scheduler(this.scheduler).metrics(this.metrics).logSampleRate(requestLogSampleRate)
+				.compressRequestsOverBytes(compressRequestsOverBytes).build();
+		this.cache = cacheTtlMillis > 0 || resultCacheSize > 0
+				? new ResponseCache(cacheTtlMillis, resultCacheSize, path -> http.getAsync(makeUrl(path))) : null;
+	}
+
+	public void setHost(String host) {
+		this.host = host;
+		this.baseUrl = null;
+	}
+
+	public void setPort(int port) {
+		this.port = port;
+		this.baseUrl = null;
+	}
 
 	/**
 	 * <p>
 	 * This method implements the Rest API <code>'POST /binaries/&lt;appName&gt;' </code>
 	 * of the  Job Server.
 	 * 
+	 * <p>
+	 * The stream is sent in chunks as it is read, it is not closed by this method.
+	 * 
 	 * @param binStream Contents of the target jar file to be uploaded
 	 * @param alias of the uploaded jar file.
 	 * @return result.
 	 * @throws IOException
 	 */
 	public String uploadJobJar(InputStream binStream, String appName) throws IOException {
-		return Http.postJar(makeUrl("/binaries/" + appName), IOUtils.toByteArray(binStream));
+		return uploadJobJar(binStream, -1, appName, null);
+	}
+
+	/**
+	 * Uploads the jar from a stream, reporting progress to the given listener.
+	 * 
+	 * @param binStream Contents of the target jar file to be uploaded
+	 * @param length length of the stream, or -1 if unknown
+	 * @param appName alias of the uploaded jar file.
+	 * @param listener progress listener, may be null
+	 * @return result.
+	 * @throws IOException
+	 */
+	public String uploadJobJar(InputStream binStream, long length, String appName, ProgressListener listener)
+			throws IOException {
+		try {
+			return http.postJar(makeUrl("/binaries/" + appName), binStream, length, listener);
+		} finally {
+			invalidate("/binaries");
+		}
 	}
 
 	/**
@@ -75,7 +243,54 @@ public class JobServerClient {
 	 *     jar
 	 */
 	public String uploadJobJar(File binFile, String appName) throws IOException {
-		return uploadJobJar(new FileInputStream(binFile), appName);
+		return uploadJobJar(binFile, appName, null);
+	}
+
+	/**
+	 * Uploads the jar file, reporting progress to the given listener.
+	 * 
+	 * @param binFile the binary file
+	 * @param appName alias of the uploaded jar file.
+	 * @param listener progress listener, may be null
+	 * @return result.
+	 * @throws IOException
+	 */
+	public String uploadJobJar(File binFile, String appName, ProgressListener listener) throws IOException {
+		try {
+			return http.postJar(makeUrl("/binaries/" + appName), binFile, listener);
+		} finally {
+			invalidate("/binaries");
+		}
+	}
+
+	/**
+	 * Uploads the jar file only if the server does not already have it.
+	 * 
+	 * <p>
+	 * The SHA-256 of the file is compared with the one recorded at the last
+	 * upload of appName by this client, and the upload time reported by
+	 * <code>GET /binaries</code> with the recorded one. The jar is skipped when
+	 * both match, i.e. the content did not change and nobody replaced it since.
+	 * 
+	 * @param binFile the binary file
+	 * @param appName alias of the uploaded jar file.
+	 * @return whether the upload was skipped, and its response otherwise
+	 * @throws IOException
+	 */
+	public UploadResult uploadJobJarIfChanged(File binFile, String appName) throws IOException {
+		String sha256 = BinaryIndex.sha256(binFile);
+		Binary current = getBinaries().get(appName);
+		if (binaryIndex.isCurrent(appName, sha256, current))
+			return new UploadResult(appName, sha256, true, null, current.getUpload_time());
+
+		String response = uploadJobJar(binFile, appName);
+		Binary uploaded = getBinaries().get(appName);
+		long uploadTime = uploaded == null ? Times.UNKNOWN : uploaded.getUploadTimeEpochMillis();
+		if (uploadTime < 0 || (current != null && uploadTime == current.getUploadTimeEpochMillis()))
+			binaryIndex.remove(appName); // the upload did not replace the server copy
+		else
+			binaryIndex.put(appName, sha256, uploadTime);
+		return new UploadResult(appName, sha256, false, response, uploaded == null ? null : uploaded.getUpload_time());
 	}
 
 	/**
@@ -85,14 +300,16 @@ public class JobServerClient {
 	 * This method implements the Rest API <code>'GET /contexts '</code>
 	 * of the  Job Server.
 	 * 
+	 * <p>
+	 * Like the other GETs of this client, concurrent calls share one request
+	 * and each gets its own copy of the response.
+	 * 
 	 * @return a list containing names of current contexts
 	 * @throws JobServerClientException error occurs when trying to get 
 	 *         information of contexts
 	 */
 	public List<String> getContexts() throws IOException {
-		String json = Http.get(makeUrl("/contexts"));
-		return gson.fromJson(json, new TypeToken<ArrayList<String>>() {
-		}.getType());
+		return new ArrayList<>(flights.call(listingKey("/contexts"), () -> parseContexts(getListing("/contexts"))));
 	}
 
 	/**
@@ -113,7 +330,11 @@ public class JobServerClient {
 	 *        or I/O error occurs while trying to create context in spark job server.
 	 */
 	public String createContext(String contextName, Map<String, String> params) throws IOException {
-		return Http.postJson(makeUrl("/contexts/" + contextName, params), "");
+		try {
+			return http.postJson(makeUrl("/contexts/" + contextName, params), "");
+		} finally {
+			invalidate("/contexts");
+		}
 	}
 
 	/**
@@ -131,7 +352,11 @@ public class JobServerClient {
 	 *        or I/O error occurs while trying to delete context in spark job server.
 	 */
 	public String deleteContext(String contextName) throws IOException {
-		return Http.delete(makeUrl("/contexts/" + contextName));
+		try {
+			return http.delete(makeUrl("/contexts/" + contextName));
+		} finally {
+			invalidate("/contexts");
+		}
 	}
 
 	/**
@@ -146,9 +371,22 @@ public class JobServerClient {
 	 *         information of jobs
 	 */
 	public List<JobInfo> getJobs() throws IOException {
-		String json = Http.get(makeUrl("/jobs"));
-		return gson.fromJson(json, new TypeToken<ArrayList<JobInfo>>() {
-		}.getType());
+		return copyJobs(flights.call("/jobs", () -> parseJobs(http.get(makeUrl("/jobs")))));
+	}
+
+	/**
+	 * Lists the jobs with the given status, such as the running ones, with
+	 * <code>'GET /jobs?limit=&lt;limit&gt;&amp;status=&lt;status&gt;'</code>.
+	 * 
+	 * @param limit max number of jobs listed, 0 for the default of the job server
+	 * @param status status of the jobs listed, or null for any
+	 * @return a list containing information of the jobs
+	 * @throws JobServerClientException error occurs when trying to get 
+	 *         information of jobs
+	 */
+	public List<JobInfo> getJobs(int limit, JobStatus status) throws IOException {
+		HttpUrl url = makeUrl("/jobs", jobsQuery(limit, status));
+		return copyJobs(flights.call(pathAndQuery(url), () -> parseJobs(http.get(url))));
 	}
 
 	/**
@@ -184,8 +422,11 @@ public class JobServerClient {
 	 *        or I/O error occurs when trying to start the new job
 	 */
 	public JobInfo startJob(String data, Map<String, String> params) throws IOException {
-		String json = Http.postJson(makeUrl("/jobs", params), data);
-		return gson.fromJson(json, JobInfo.class);
+		try {
+			return parseJobInfo(http.postJson(makeUrl("/jobs", params), data));
+		} catch (JobServerClientException e) {
+			return parseJobInfo(failedJob(e));
+		}
 	}
 
 	/**
@@ -217,12 +458,20 @@ public class JobServerClient {
 	 *
 	 *       iv.<code>IJobServerClientConstants.PARAM_SYNC</code>, optional one
 	 *
+	 * <p>
+	 * The stream is sent as UTF-8 while it is read, without being held in
+	 * memory. It is not closed by this method.
+	 *
 	 * @return the corresponding job status or job result
 	 * @throws JobServerClientException the given parameters exist null or empty value,
 	 *        or I/O error occurs when trying to start the new job
 	 */
 	public JobInfo startJob(InputStream dataFileStream, Map<String, String> params) throws IOException {
-		return startJob(IOUtils.toString(dataFileStream), params);
+		try {
+			return parseJobInfo(http.postJson(makeUrl("/jobs", params), dataFileStream));
+		} catch (JobServerClientException e) {
+			return parseJobInfo(failedJob(e));
+		}
 	}
 
 	/**
@@ -254,16 +503,87 @@ public class JobServerClient {
 	 *
 	 *       iv.<code>IJobServerClientConstants.PARAM_SYNC</code>, optional one
 	 *
+	 * <p>
+	 * The UTF-8 file is streamed from disk with its length known upfront,
+	 * without being held in memory.
+	 *
 	 * @return the corresponding job status or job result
 	 * @throws JobServerClientException the given parameters exist null or empty value,
 	 *        or I/O error occurs when trying to start the new job
 	 */
 	public JobInfo startJob(File dataFile, Map<String, String> params) throws IOException {
-		return startJob(FileUtils.readFileToString(dataFile), params);
+		try {
+			return parseJobInfo(http.postJson(makeUrl("/jobs", params), dataFile));
+		} catch (JobServerClientException e) {
+			return parseJobInfo(failedJob(e));
+		}
+	}
+
+	/**
+	 * Starts a job like {@link #startJob(String, Map)}, binding the result of a
+	 * synchronous job (<code>PARAM_SYNC</code>) to the given type while the
+	 * response is read. See {@link ResultCodec}.
+	 * 
+	 * @param resultType type of the result
+	 * @return the job information and its typed result
+	 * @throws IOException
+	 */
+	public <T> JobResult<T> startJob(String data, Map<String, String> params, Class<T> resultType)
+			throws IOException {
+		return startJob(data, params, (Type) resultType);
+	}
+
+	/**
+	 * Generic version of {@link #startJob(String, Map, Class)}, e.g. with a
+	 * <code>TypeToken</code> type of a list.
+	 */
+	public <T> JobResult<T> startJob(String data, Map<String, String> params, Type resultType)
+			throws IOException {
+		try {
+			return http.postJson(makeUrl("/jobs", params), data,
+					(body, charset) -> resultCodec.<T>decode(body, charset, resultType));
+		} catch (JobServerClientException e) {
+			return new JobResult<>(parseJobInfo(failedJob(e)), null);
+		}
+	}
+
+	/**
+	 * Starts a batch of jobs, keeping as many <code>POST /jobs</code> in flight
+	 * as the client allows per host instead of one round trip after the other.
+	 * See {@link #startJobs(List, int)}.
+	 */
+	public BatchResult startJobs(List<JobSubmission> submissions) throws IOException, InterruptedException {
+		return startJobs(submissions, http.maxRequestsPerHost());
+	}
+
+	/**
+	 * Starts a batch of jobs with at most <code>concurrency</code> requests in
+	 * flight over the connection pool. A failed submission is reported in its
+	 * entry of the result and does not abort the others.
+	 * 
+	 * @param submissions the jobs to start
+	 * @param concurrency max requests in flight
+	 * @return one entry per submission, in order, and the batch throughput
+	 * @throws InterruptedException
+	 */
+	public BatchResult startJobs(List<JobSubmission> submissions, int concurrency)
+			throws IOException, InterruptedException {
+		try {
+			return await(startJobsAsync(submissions, concurrency));
+		} catch (TimeoutException e) {
+			throw new IllegalStateException(e); // not thrown without a timeout
+		}
+	}
+
+	/**
+	 * Asynchronous version of {@link #startJobs(List, int)}.
+	 */
+	public CompletableFuture<BatchResult> startJobsAsync(List<JobSubmission> submissions, int concurrency) {
+		return BatchResult.run(this, submissions, concurrency);
 	}
 
 	public String killJob(String jobId) throws IOException {
-		return Http.delete(makeUrl("jobs/" + jobId));
+		return http.delete(makeUrl("jobs/" + jobId));
 	}
 
 	/**
@@ -273,10 +593,99 @@ public class JobServerClient {
 	 * @throws IOException
 	 */
 	public JobInfo getJobResult(String jobId) throws IOException {
-		String json = Http.get(makeUrl("/jobs/" + jobId));
-		final JobInfo jobResult = gson.fromJson(json, JobInfo.class);
-		jobResult.setJobId(jobId);
-		return jobResult;
+		return flights.call("/jobs/" + jobId, () -> loadJobResult(jobId)).copy();
+	}
+
+	private JobInfo loadJobResult(String jobId) throws IOException {
+		String path = "/jobs/" + jobId;
+		String json = cachedJob(path);
+		if (json != null)
+			return parseJobResult(json, jobId);
+		json = http.get(makeUrl(path));
+		return cacheIfDone(path, json, parseJobResult(json, jobId));
+	}
+
+	/**
+	 * Gets the job like {@link #getJobResult(String)}, binding its result to the
+	 * given type in a single pass over the response instead of building a
+	 * <code>JsonElement</code> first. See {@link ResultCodec}.
+	 * 
+	 * <p>
+	 * Typed results are neither cached nor shared between concurrent callers.
+	 * 
+	 * @param jobId the id of the target job
+	 * @param resultType type of the result
+	 * @return the job information and its typed result
+	 * @throws IOException
+	 */
+	public <T> JobResult<T> getJobResult(String jobId, Class<T> resultType) throws IOException {
+		return getJobResult(jobId, (Type) resultType);
+	}
+
+	/**
+	 * Generic version of {@link #getJobResult(String, Class)}, e.g. with a
+	 * <code>TypeToken</code> type of a list.
+	 */
+	public <T> JobResult<T> getJobResult(String jobId, Type resultType) throws IOException {
+		JobResult<T> job = http.get(makeUrl("/jobs/" + jobId),
+				(body, charset) -> resultCodec.<T>decode(body, charset, resultType));
+		job.getJob().setJobId(jobId);
+		return job;
+	}
+
+	/**
+	 * Waits until the job reaches <code>FINISHED</code>, <code>OK</code> or
+	 * <code>ERROR</code>. See {@link #awaitJobAsync(String, long, TimeUnit)}.
+	 * 
+	 * @param jobId the id of the target job
+	 * @param timeout how long to wait
+	 * @param unit unit of timeout
+	 * @return the final job result
+	 * @throws IOException error occurs when polling the job
+	 * @throws TimeoutException the job is not done in time
+	 * @throws InterruptedException
+	 */
+	public JobInfo awaitJob(String jobId, long timeout, TimeUnit unit)
+			throws IOException, TimeoutException, InterruptedException {
+		return await(awaitJobAsync(jobId, timeout, unit));
+	}
+
+	/**
+	 * Waits until the job returned by one of the <code>startJob</code> methods
+	 * is done. Its classPath lets the first poll be timed from earlier runs of
+	 * the same class.
+	 */
+	public JobInfo awaitJob(JobInfo job, long timeout, TimeUnit unit)
+			throws IOException, TimeoutException, InterruptedException {
+		return await(awaitJobAsync(job, timeout, unit));
+	}
+
+	/**
+	 * Polls the job with exponential backoff and jitter until it reaches
+	 * <code>FINISHED</code>, <code>OK</code> or <code>ERROR</code>.
+	 * 
+	 * <p>
+	 * The first delay is derived from the durations of finished jobs with the
+	 * same classPath seen by this client. A poll failing with an I/O error is
+	 * repeated at the next backoff step. The future completes exceptionally with
+	 * a <code>TimeoutException</code> when the job is not done in time, or with
+	 * a <code>JobServerClientException</code> with code 404 when the job is
+	 * unknown, and cancelling it stops the polling.
+	 * 
+	 * @param jobId the id of the target job
+	 * @param timeout how long to wait
+	 * @param unit unit of timeout
+	 * @return the final job result
+	 */
+	public CompletableFuture<JobInfo> awaitJobAsync(String jobId, long timeout, TimeUnit unit) {
+		return waiter.await(jobId, null, unit.toMillis(timeout));
+	}
+
+	/**
+	 * Asynchronous version of {@link #awaitJob(JobInfo, long, TimeUnit)}.
+	 */
+	public CompletableFuture<JobInfo> awaitJobAsync(JobInfo job, long timeout, TimeUnit unit) {
+		return waiter.await(job.getJobId(), job.getClassPath(), unit.toMillis(timeout));
 	}
 
 	/**
@@ -287,15 +696,23 @@ public class JobServerClient {
 	 * of the  Job Server.
 	 * 
 	 * @param jobId the id of the target job
-	 * @return the corresponding <code>JobConfig</code> instance if the job
-	 * with the given jobId exists, or null if there is no corresponding job in 
-	 * the spark job server.
+	 * @return the corresponding <code>JobConfig</code> instance
 	 * @throws JobServerClientException error occurs when trying to get 
-	 *         information of the target job configuration
+	 *         information of the target job configuration, with code 404 if
+	 *         there is no job with the given jobId in the spark job server
 	 */
 	public JobConfig getConfig(String jobId) throws IOException {
-		String json = Http.get(makeUrl("/jobs/" + jobId + "/config"));
-		return gson.fromJson(json, JobConfig.class);
+		return flights.call("/jobs/" + jobId + "/config", () -> loadConfig(jobId)).copy();
+	}
+
+	private JobConfig loadConfig(String jobId) throws IOException {
+		String path = "/jobs/" + jobId + "/config";
+		String json = cachedJob(path);
+		if (json == null) {
+			json = http.get(makeUrl(path));
+			cacheConfig(jobId, path, json);
+		}
+		return parseConfig(json);
 	}
 	
 	/**
@@ -305,35 +722,542 @@ public class JobServerClient {
 	 * @throws IOException error occurs when trying to get information of spark job binaries
 	 */
 	public Binaries getBinaries() throws IOException{
-		String json = Http.get(makeUrl("/binaries"));
-		return gson.fromJson(json, Binaries.class);
+		return copyBinaries(flights.call(listingKey("/binaries"), () -> parseBinaries(getListing("/binaries"))));
 	}
 
 	public String deleteBinary(String name) throws IOException{
-		return Http.delete(makeUrl("/binaries/" + name));
+		binaryIndex.remove(name);
+		try {
+			return http.delete(makeUrl("/binaries/" + name));
+		} finally {
+			invalidate("/binaries");
+		}
 	}
 	
+	/**
+	 * Streaming version of {@link #getJobs()}. The jobs are bound one at a time
+	 * while the response is read.
+	 * 
+	 * <p>
+	 * The iterator must be closed when it is not consumed to the end.
+	 * 
+	 * @return iterator over the jobs of <code>GET /jobs</code>
+	 * @throws IOException error occurs when trying to get information of jobs
+	 */
+	public JsonArrayIterator<JobInfo> iterateJobs() throws IOException {
+		JsonReader reader = openJson("/jobs");
+		try {
+			reader.beginArray();
+		} catch (IOException | RuntimeException e) {
+			reader.close();
+			throw e;
+		}
+		return new JsonArrayIterator<>(reader, JobInfo.class);
+	}
+
+	/**
+	 * Visits the jobs of <code>GET /jobs</code> one at a time while the response is read.
+	 * 
+	 * @param visitor called for each job
+	 * @throws IOException error occurs when trying to get information of jobs
+	 */
+	public void forEachJob(Consumer<? super JobInfo> visitor) throws IOException {
+		try (JsonArrayIterator<JobInfo> jobs = iterateJobs()) {
+			jobs.forEachRemaining(visitor);
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * Visits the binaries of <code>GET /binaries</code> one at a time while the
+	 * response is read.
+	 * 
+	 * @param visitor called with the name and information of each binary
+	 * @throws IOException error occurs when trying to get information of spark job binaries
+	 */
+	public void forEachBinary(BiConsumer<String, ? super Binary> visitor) throws IOException {
+		try (JsonReader reader = openJson("/binaries")) {
+			reader.beginObject();
+			while (reader.hasNext()) {
+				String name = reader.nextName();
+				visitor.accept(name, gson.fromJson(reader, Binary.class));
+			}
+			reader.endObject();
+		} catch (JsonParseException e) {
+			throw JsonArrayIterator.malformed(e);
+		}
+	}
+
+	/**
+	 * Streaming version of {@link #getJobResult(String)} for jobs returning large
+	 * arrays. Each element of the <code>result</code> array is bound to the given
+	 * type and passed to the visitor while the response is read, so the whole
+	 * result is never held in memory. A result that is not an array, such as the
+	 * error of a failed job, is passed as a single element.
+	 * 
+	 * @param jobId the id of the target job
+	 * @param elementType type of the result elements, <code>JsonElement.class</code>
+	 *        to get them untyped
+	 * @param visitor called for each result element
+	 * @return the job information without its result
+	 * @throws IOException
+	 */
+	public <T> JobInfo forEachResultElement(String jobId, Type elementType, Consumer<? super T> visitor)
+			throws IOException {
+		JsonObject info = new JsonObject();
+		try (JsonReader reader = openJson("/jobs/" + jobId)) {
+			reader.beginObject();
+			while (reader.hasNext()) {
+				String name = reader.nextName();
+				if (!"result".equals(name)) {
+					info.add(name, gson.fromJson(reader, JsonElement.class));
+				} else if (reader.peek() == JsonToken.BEGIN_ARRAY) {
+					reader.beginArray();
+					try {
+						new JsonArrayIterator<T>(reader, elementType, false).forEachRemaining(visitor);
+					} catch (UncheckedIOException e) {
+						throw e.getCause();
+					}
+				} else {
+					visitor.accept(gson.fromJson(reader, elementType));
+				}
+			}
+			reader.endObject();
+		} catch (JsonParseException e) {
+			throw JsonArrayIterator.malformed(e);
+		}
+		JobInfo job = gson.fromJson(info, JobInfo.class);
+		job.setJobId(jobId);
+		return job;
+	}
+
+	/**
+	 * Asynchronous version of {@link #uploadJobJar(InputStream, String)}.
+	 */
+	public CompletableFuture<String> uploadJobJarAsync(InputStream binStream, String appName) {
+		return uploadJobJarAsync(binStream, -1, appName, null);
+	}
+
+	/**
+	 * Asynchronous version of {@link #uploadJobJar(File, String)}.
+	 */
+	public CompletableFuture<String> uploadJobJarAsync(File binFile, String appName) {
+		return uploadJobJarAsync(binFile, appName, null);
+	}
+
+	/**
+	 * Asynchronous version of {@link #uploadJobJar(InputStream, long, String, ProgressListener)}.
+	 * The stream is read on a dispatcher thread while the request is sent.
+	 */
+	public CompletableFuture<String> uploadJobJarAsync(InputStream binStream, long length, String appName,
+			ProgressListener listener) {
+		return async(invalidating(http.postJarAsync(makeUrl("/binaries/" + appName), binStream, length, listener),
+				"/binaries"), Function.identity());
+	}
+
+	/**
+	 * Asynchronous version of {@link #uploadJobJar(File, String, ProgressListener)}.
+	 */
+	public CompletableFuture<String> uploadJobJarAsync(File binFile, String appName, ProgressListener listener) {
+		return async(invalidating(http.postJarAsync(makeUrl("/binaries/" + appName), binFile, listener), "/binaries"),
+				Function.identity());
+	}
+
+	/**
+	 * Asynchronous version of {@link #getContexts()}.
+	 */
+	public CompletableFuture<List<String>> getContextsAsync() {
+		return flights.callAsync(listingKey("/contexts"), () -> async(getListingAsync("/contexts"), this::parseContexts))
+				.thenApply(ArrayList::new);
+	}
+
+	/**
+	 * Asynchronous version of {@link #createContext(String, Map)}.
+	 */
+	public CompletableFuture<String> createContextAsync(String contextName, Map<String, String> params) {
+		return async(invalidating(http.postJsonAsync(makeUrl("/contexts/" + contextName, params), ""), "/contexts"),
+				Function.identity());
+	}
+
+	/**
+	 * Asynchronous version of {@link #deleteContext(String)}.
+	 */
+	public CompletableFuture<String> deleteContextAsync(String contextName) {
+		return async(invalidating(http.deleteAsync(makeUrl("/contexts/" + contextName)), "/contexts"),
+				Function.identity());
+	}
+
+	/**
+	 * Asynchronous version of {@link #getJobs()}.
+	 */
+	public CompletableFuture<List<JobInfo>> getJobsAsync() {
+		return flights.callAsync("/jobs", () -> async(http.getAsync(makeUrl("/jobs")), this::parseJobs))
+				.thenApply(JobServerClient::copyJobs);
+	}
+
+	/**
+	 * Asynchronous version of {@link #getJobs(int, JobStatus)}.
+	 */
+	public CompletableFuture<List<JobInfo>> getJobsAsync(int limit, JobStatus status) {
+		HttpUrl url = makeUrl("/jobs", jobsQuery(limit, status));
+		return flights.callAsync(pathAndQuery(url), () -> async(http.getAsync(url), this::parseJobs))
+				.thenApply(JobServerClient::copyJobs);
+	}
+
+	/**
+	 * Asynchronous version of {@link #startJob(String, Map)}.
+	 */
+	public CompletableFuture<JobInfo> startJobAsync(String data, Map<String, String> params) {
+		return async(orFailedJob(http.postJsonAsync(makeUrl("/jobs", params), data)), this::parseJobInfo);
+	}
+
+	/**
+	 * Asynchronous version of {@link #startJob(InputStream, Map)}. The stream
+	 * is read on a dispatcher thread while the request is sent.
+	 */
+	public CompletableFuture<JobInfo> startJobAsync(InputStream dataFileStream, Map<String, String> params) {
+		return async(orFailedJob(http.postJsonAsync(makeUrl("/jobs", params), dataFileStream)), this::parseJobInfo);
+	}
+
+	/**
+	 * Asynchronous version of {@link #startJob(File, Map)}.
+	 */
+	public CompletableFuture<JobInfo> startJobAsync(File dataFile, Map<String, String> params) {
+		return async(orFailedJob(http.postJsonAsync(makeUrl("/jobs", params), dataFile)), this::parseJobInfo);
+	}
+
+	/**
+	 * Asynchronous version of {@link #killJob(String)}.
+	 */
+	public CompletableFuture<String> killJobAsync(String jobId) {
+		return async(http.deleteAsync(makeUrl("jobs/" + jobId)), Function.identity());
+	}
+
+	/**
+	 * Asynchronous version of {@link #getJobResult(String)}.
+	 */
+	public CompletableFuture<JobInfo> getJobResultAsync(String jobId) {
+		return flights.callAsync("/jobs/" + jobId, () -> loadJobResultAsync(jobId)).thenApply(JobInfo::copy);
+	}
+
+	private CompletableFuture<JobInfo> loadJobResultAsync(String jobId) {
+		String path = "/jobs/" + jobId;
+		String cached = cachedJob(path);
+		if (cached != null)
+			return CompletableFuture.completedFuture(parseJobResult(cached, jobId));
+		return async(http.getAsync(makeUrl(path)), json -> cacheIfDone(path, json, parseJobResult(json, jobId)));
+	}
+
+	/**
+	 * Asynchronous version of {@link #getConfig(String)}.
+	 */
+	public CompletableFuture<JobConfig> getConfigAsync(String jobId) {
+		return flights.callAsync("/jobs/" + jobId + "/config", () -> loadConfigAsync(jobId)).thenApply(JobConfig::copy);
+	}
+
+	private CompletableFuture<JobConfig> loadConfigAsync(String jobId) {
+		String path = "/jobs/" + jobId + "/config";
+		String cached = cachedJob(path);
+		if (cached != null)
+			return CompletableFuture.completedFuture(parseConfig(cached));
+		return async(http.getAsync(makeUrl(path)), json -> {
+			cacheConfig(jobId, path, json);
+			return parseConfig(json);
+		});
+	}
+
+	/**
+	 * Asynchronous version of {@link #getBinaries()}.
+	 */
+	public CompletableFuture<Binaries> getBinariesAsync() {
+		return flights.callAsync(listingKey("/binaries"), () -> async(getListingAsync("/binaries"), this::parseBinaries))
+				.thenApply(JobServerClient::copyBinaries);
+	}
+
+	/**
+	 * Asynchronous version of {@link #deleteBinary(String)}.
+	 */
+	public CompletableFuture<String> deleteBinaryAsync(String name) {
+		try {
+			binaryIndex.remove(name);
+		} catch (IOException e) {
+			return failed(e);
+		}
+		return async(invalidating(http.deleteAsync(makeUrl("/binaries/" + name)), "/binaries"), Function.identity());
+	}
+
+	/**
+	 * @return hit and miss counters of the response cache, all zero when
+	 *         caching is disabled
+	 */
+	public CacheStats getCacheStats() {
+		return cache == null ? new CacheStats(0, 0, 0, 0) : cache.stats();
+	}
+
+	/**
+	 * Releases the connection pool of this client and fails the waits of
+	 * {@link #awaitJobAsync(String, long, TimeUnit)} in progress. The client
+	 * cannot be used afterwards.
+	 */
+	@Override
+	public void close() {
+		waiter.close();
+		if (ownsScheduler)
+			scheduler.shutdownNow();
+		http.close();
+	}
+
+	/**
+	 * Parses the response on the callback executor if there is one. Cancelling
+	 * the returned future cancels the http call.
+	 */
+	private <T> CompletableFuture<T> async(CompletableFuture<String> response, Function<String, T> parser) {
+		CompletableFuture<T> result = callbackExecutor == null ? response.thenApply(parser)
+				: response.thenApplyAsync(parser, callbackExecutor);
+		result.whenComplete((r, e) -> {
+			if (result.isCancelled())
+				response.cancel(true);
+		});
+		return result;
+	}
+
+	private String getListing(String path) throws IOException {
+		if (cache == null)
+			return http.get(makeUrl(path));
+		String json = cache.getListing(path);
+		if (json == null) {
+			long token = cache.generation();
+			json = http.get(makeUrl(path));
+			cache.putListing(path, json, token);
+		}
+		return json;
+	}
+
+	private CompletableFuture<String> getListingAsync(String path) {
+		if (cache == null)
+			return http.getAsync(makeUrl(path));
+		String json = cache.getListing(path);
+		if (json != null)
+			return CompletableFuture.completedFuture(json);
+		long token = cache.generation();
+		CompletableFuture<String> response = http.getAsync(makeUrl(path));
+		response.thenAccept(body -> cache.putListing(path, body, token));
+		return response;
+	}
+
+	private String cachedJob(String path) {
+		return cache == null ? null : cache.getJob(path);
+	}
+
+	private JobInfo cacheIfDone(String path, String json, JobInfo job) {
+		if (cache != null && (job.isFinished() || job.isError()))
+			cache.putJob(path, json);
+		return job;
+	}
+
+	/**
+	 * Caches the config of a job whose result is cached, i.e. known to be done.
+	 */
+	private void cacheConfig(String jobId, String path, String json) {
+		if (cache != null && cache.containsJob("/jobs/" + jobId))
+			cache.putJob(path, json);
+	}
+
+	/**
+	 * Key under which GETs of a listing share a call. It changes with every
+	 * change made by this client, so a caller reading after its own change
+	 * never joins a GET that started before it.
+	 */
+	private String listingKey(String path) {
+		return path + "#" + writes.get();
+	}
+
+	private void invalidate(String path) {
+		writes.incrementAndGet();
+		if (cache != null)
+			cache.invalidate(path);
+	}
+
+	/**
+	 * Invalidates the cached listing once the call that changes it completes,
+	 * before the returned future does. Cancelling the returned future cancels
+	 * the call.
+	 */
+	private <T> CompletableFuture<T> invalidating(CompletableFuture<T> response, String path) {
+		CompletableFuture<T> result = response.whenComplete((r, e) -> invalidate(path));
+		result.whenComplete((r, e) -> {
+			if (result.isCancelled())
+				response.cancel(true);
+		});
+		return result;
+	}
+
+	private static <T> T await(CompletableFuture<T> future)
+			throws IOException, TimeoutException, InterruptedException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			future.cancel(true);
+			throw e;
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof CompletionException && cause.getCause() != null)
+				cause = cause.getCause();
+			if (cause instanceof IOException)
+				throw (IOException) cause;
+			if (cause instanceof TimeoutException)
+				throw (TimeoutException) cause;
+			throw new IOException(cause);
+		}
+	}
+
+	/**
+	 * @return the body of a synchronous job that failed, which the job server
+	 *         answers with 500 and the job in <code>ERROR</code> status
+	 * @throws JobServerClientException the given exception for any other error
+	 */
+	private static String failedJob(JobServerClientException e) throws JobServerClientException {
+		if (e.getCode() >= 500 && Http.isJobError(e.getBody()))
+			return e.getBody();
+		throw e;
+	}
+
+	/**
+	 * Completes with the body of a failed synchronous job instead of its
+	 * error, see {@link #failedJob(JobServerClientException)}. Cancelling the
+	 * returned future cancels the call.
+	 */
+	private static CompletableFuture<String> orFailedJob(CompletableFuture<String> response) {
+		CompletableFuture<String> result = new CompletableFuture<>();
+		response.whenComplete((body, e) -> {
+			Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+			if (cause == null) {
+				result.complete(body);
+			} else if (cause instanceof JobServerClientException) {
+				try {
+					result.complete(failedJob((JobServerClientException) cause));
+				} catch (JobServerClientException error) {
+					result.completeExceptionally(error);
+				}
+			} else {
+				result.completeExceptionally(cause);
+			}
+		});
+		result.whenComplete((r, e) -> {
+			if (result.isCancelled())
+				response.cancel(true);
+		});
+		return result;
+	}
+
+	private static <T> CompletableFuture<T> failed(Throwable e) {
+		CompletableFuture<T> future = new CompletableFuture<>();
+		future.completeExceptionally(e);
+		return future;
+	}
+
+	private List<String> parseContexts(String json) {
+		return parse("getContexts", json, CONTEXTS_TYPE);
+	}
+
+	private List<JobInfo> parseJobs(String json) {
+		return parse("getJobs", json, JOBS_TYPE);
+	}
+
+	private JobInfo parseJobInfo(String json) {
+		return parse("startJob", json, JobInfo.class);
+	}
+
+	private JobInfo parseJobResult(String json, String jobId) {
+		final JobInfo jobResult = parse("getJobResult", json, JobInfo.class);
+		jobResult.setJobId(jobId);
+		return jobResult;
+	}
+
+	private JobConfig parseConfig(String json) {
+		return parse("getConfig", json, JobConfig.class);
+	}
+
+	private Binaries parseBinaries(String json) {
+		return parse("getBinaries", json, Binaries.class);
+	}
+
+	/**
+	 * Binds the response, timing it apart from the network time.
+	 */
+	private <T> T parse(String operation, String json, Type type) {
+		long start = System.nanoTime();
+		try {
+			return gson.fromJson(json, type);
+		} finally {
+			metrics.recordParse(operation, System.nanoTime() - start);
+		}
+	}
+
+	private static String pathAndQuery(HttpUrl url) {
+		return url.encodedQuery() == null ? url.encodedPath() : url.encodedPath() + "?" + url.encodedQuery();
+	}
+
+	private static Map<String, String> jobsQuery(int limit, JobStatus status) {
+		Map<String, String> query = new LinkedHashMap<>();
+		if (limit > 0)
+			query.put("limit", Integer.toString(limit));
+		if (status != null)
+			query.put("status", status.name());
+		return query;
+	}
+
+	private static List<JobInfo> copyJobs(List<JobInfo> jobs) {
+		List<JobInfo> copy = new ArrayList<>(jobs.size());
+		for (JobInfo job : jobs)
+			copy.add(job.copy());
+		return copy;
+	}
+
+	private static Binaries copyBinaries(Binaries binaries) {
+		Binaries copy = new Binaries();
+		binaries.forEach((name, binary) -> copy.put(name, binary.copy()));
+		return copy;
+	}
+
+	private JsonReader openJson(String path) throws IOException {
+		return new JsonReader(http.openReader(makeUrl(path)));
+	}
+
 	/**
 	 * construct url with path
 	 * @param path
 	 * @return
 	 */
-	private String makeUrl(String path) {
+	private HttpUrl makeUrl(String path) {
 		return makeUrl(path, null);
 	}
 
 	/**
-	 * Construct url with path and parameters
+	 * Construct url with path and parameters. Path segments, parameter keys
+	 * and values are percent-encoded.
 	 * @param path
 	 * @return
 	 */
-	private String makeUrl(String path, Map<String, String> args) {
-		String url = StringUtils.join("http://", host, ":", port, path.startsWith("/") ? "": "/", path);
-		if (args != null && !args.isEmpty()) {
-			Optional<String> argstr = args.entrySet().stream().map(e -> StringUtils.join(e.getKey(), "=", e.getValue()))
-					.reduce((a, b) -> a + "&" + b);
-			url = StringUtils.join(url, "?", argstr.orElse(""));
+	HttpUrl makeUrl(String path, Map<String, String> args) {
+		HttpUrl.Builder url = baseUrl().newBuilder().addPathSegments(path.startsWith("/") ? path.substring(1) : path);
+		if (args != null) {
+			for (Map.Entry<String, String> e : args.entrySet())
+				url.addQueryParameter(e.getKey(), e.getValue());
+		}
+		return url.build();
+	}
+
+	/**
+	 * The url of the job server, parsed once and reused by every request.
+	 */
+	private HttpUrl baseUrl() {
+		HttpUrl url = baseUrl;
+		if (url == null) {
+			url = new HttpUrl.Builder().scheme("http").host(host).port(port).build();
+			baseUrl = url;
 		}
 		return url;
-	}	
+	}
 }
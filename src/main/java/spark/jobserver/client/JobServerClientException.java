@@ -16,23 +16,38 @@
 
 package spark.jobserver.client;
 
+import java.io.IOException;
+
 import lombok.*;
 
 /**
  * The exception indicates errors occurs when using instance 
  * of <code>IJobServerClient</code>.
+ * 
+ * <p>
+ * It is thrown when the job server answers with a non-2xx status, which is
+ * then given by <code>getCode()</code>.
  */
 
 @Getter
-public class JobServerClientException extends Exception {	
+public class JobServerClientException extends IOException {	
 
 	private static final long serialVersionUID = 1L;
 	private int code;
+	/**
+	 * Whole body of the error response, or null.
+	 */
+	private String body;
 
 	public JobServerClientException(int code, String message) {
 		super(message);
 		this.code = code;
 	}
+
+	public JobServerClientException(int code, String message, String body) {
+		this(code, message);
+		this.body = body;
+	}
 	
 	public JobServerClientException(String message, Throwable cause) {
 		super(message, cause);
@@ -0,0 +1,416 @@
+package spark.jobserver.client;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import lombok.*;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Client of a fleet of job servers that are not behind a load balancer.
+ * 
+ * <p>
+ * New jobs and contexts are routed by a {@link RoutingPolicy}. A job stays
+ * pinned to the server that returned its jobId and a context to the server
+ * running it, so later calls for them always reach the right server. The
+ * servers are health-checked in parallel in the background with
+ * <code>GET /contexts</code>; a server failing <code>maxFailures</code> times in a row is ejected until a
+ * check succeeds again. Idempotent reads are retried on another server.
+ * 
+ * <pre>
+ * JobServerCluster cluster = JobServerCluster.builder()
+ *     .client(JobServerClient.builder().host("js1").port(8090).build())
+ *     .client(JobServerClient.builder().host("js2").port(8090).build())
+ *     .policy(RoutingPolicy.LEAST_OUTSTANDING).build();
+ * </pre>
+ */
+@Slf4j
+public class JobServerCluster implements Closeable {
+	public static final long DEFAULT_HEALTH_CHECK_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(10);
+	public static final int DEFAULT_MAX_FAILURES = 3;
+	public static final int DEFAULT_MAX_TRACKED_JOBS = 10000;
+	private static final double LATENCY_WEIGHT = 0.2;
+
+	/**
+	 * A job server of the cluster with its load and health.
+	 */
+	@Getter
+	public static class Node {
+		private final JobServerClient client;
+		private final String name;
+		@Getter(AccessLevel.NONE)
+		private final AtomicInteger outstanding = new AtomicInteger();
+		private volatile double latencyMillis;
+		private volatile boolean healthy = true;
+		@Getter(AccessLevel.NONE)
+		private final AtomicInteger failures = new AtomicInteger();
+		/**
+		 * Contexts running on this node as of the last health check or call.
+		 */
+		private final Set<String> contexts = ConcurrentHashMap.newKeySet();
+
+		Node(JobServerClient client) {
+			this.client = client;
+			this.name = client.getHost() + ":" + client.getPort();
+		}
+
+		public int getOutstanding() {
+			return outstanding.get();
+		}
+
+		@Override
+		public String toString() {
+			return name;
+		}
+	}
+
+	@FunctionalInterface
+	private interface Call<T> {
+		T call(JobServerClient client) throws IOException;
+	}
+
+	@FunctionalInterface
+	private interface NodeTask {
+		void run(Node node) throws IOException;
+	}
+
+	private final List<Node> nodes;
+	private final RoutingPolicy policy;
+	private final int maxFailures;
+	private final ScheduledExecutorService scheduler;
+	/**
+	 * Server of the most recently used jobs, the least recently used ones are
+	 * forgotten and looked up again if needed.
+	 */
+	private final Map<String, Node> jobOwners;
+
+	/**
+	 * @param clients one client per job server
+	 * @param policy routing policy of new jobs and contexts, least outstanding by default
+	 * @param healthCheckIntervalMillis interval of the background health checks
+	 * @param maxFailures consecutive failures after which a server is ejected
+	 * @param maxTrackedJobs number of jobs whose server is remembered
+	 */
+	@Builder
+	private JobServerCluster(@Singular List<JobServerClient> clients, RoutingPolicy policy,
+			long healthCheckIntervalMillis, int maxFailures, int maxTrackedJobs) {
+		if (clients.isEmpty())
+			throw new IllegalArgumentException("At least one job server is required");
+		this.nodes = Collections.unmodifiableList(clients.stream().map(Node::new).collect(Collectors.toList()));
+		this.policy = policy != null ? policy : RoutingPolicy.LEAST_OUTSTANDING;
+		this.maxFailures = maxFailures > 0 ? maxFailures : DEFAULT_MAX_FAILURES;
+		int maxJobs = maxTrackedJobs > 0 ? maxTrackedJobs : DEFAULT_MAX_TRACKED_JOBS;
+		this.jobOwners = Collections.synchronizedMap(new LinkedHashMap<String, Node>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Node> eldest) {
+				return size() > maxJobs;
+			}
+		});
+		long interval = healthCheckIntervalMillis > 0 ? healthCheckIntervalMillis
+				: DEFAULT_HEALTH_CHECK_INTERVAL_MILLIS;
+		this.scheduler = Executors.newScheduledThreadPool(nodes.size(), r -> {
+			Thread thread = new Thread(r, "jobserver-cluster-health");
+			thread.setDaemon(true);
+			return thread;
+		});
+		for (Node node : nodes)
+			scheduler.scheduleWithFixedDelay(() -> checkHealth(node), 0, interval, TimeUnit.MILLISECONDS);
+	}
+
+	public List<Node> getNodes() {
+		return nodes;
+	}
+
+	/**
+	 * Starts a job on the server running its context, or on the one chosen
+	 * by the routing policy. See {@link JobServerClient#startJob(String, Map)}.
+	 */
+	public JobInfo startJob(String data, Map<String, String> params) throws IOException {
+		String context = params == null ? null : params.get(Constants.PARAM_CONTEXT);
+		Node owner = context == null ? null : contextOwner(context);
+		Node node = owner != null ? owner : choose(params);
+		JobInfo job = call(node, c -> c.startJob(data, params));
+		if (job.getJobId() != null)
+			jobOwners.put(job.getJobId(), node);
+		return job;
+	}
+
+	/**
+	 * Creates a context on the server chosen by the routing policy.
+	 */
+	public String createContext(String contextName, Map<String, String> params) throws IOException {
+		Map<String, String> routing = params == null ? new HashMap<>() : new HashMap<>(params);
+		routing.put(Constants.PARAM_CONTEXT, contextName);
+		Node node = choose(routing);
+		String result = call(node, c -> c.createContext(contextName, params));
+		node.contexts.add(contextName);
+		return result;
+	}
+
+	/**
+	 * Deletes a context on the server running it, or on every server if it is
+	 * not known where it runs. See {@link #onEvery(Call)}.
+	 */
+	public String deleteContext(String contextName) throws IOException {
+		Node owner = contextOwner(contextName);
+		if (owner != null) {
+			String result = call(owner, c -> c.deleteContext(contextName));
+			owner.contexts.remove(contextName);
+			return result;
+		}
+		return onEvery(c -> c.deleteContext(contextName));
+	}
+
+	/**
+	 * Lists the contexts of all healthy servers.
+	 */
+	public List<String> getContexts() throws IOException {
+		List<String> contexts = new ArrayList<>();
+		for (Node node : everyHealthy(this::refreshContexts))
+			contexts.addAll(node.contexts);
+		return contexts;
+	}
+
+	/**
+	 * Lists the last jobs of all healthy servers.
+	 */
+	public List<JobInfo> getJobs() throws IOException {
+		List<JobInfo> jobs = new ArrayList<>();
+		everyHealthy(node -> {
+			for (JobInfo job : call(node, JobServerClient::getJobs)) {
+				if (job.getJobId() != null)
+					jobOwners.putIfAbsent(job.getJobId(), node);
+				jobs.add(job);
+			}
+		});
+		return jobs;
+	}
+
+	public JobInfo getJobResult(String jobId) throws IOException {
+		return onJobOwner(jobId, c -> c.getJobResult(jobId));
+	}
+
+	public JobConfig getConfig(String jobId) throws IOException {
+		return onJobOwner(jobId, c -> c.getConfig(jobId));
+	}
+
+	public String killJob(String jobId) throws IOException {
+		return onJobOwner(jobId, c -> c.killJob(jobId));
+	}
+
+	/**
+	 * Lists the binaries of any healthy server, retrying on the others if it fails.
+	 */
+	public Binaries getBinaries() throws IOException {
+		return onAny(JobServerClient::getBinaries);
+	}
+
+	/**
+	 * Uploads the jar to every server, so that jobs can be routed to any of them.
+	 * See {@link #onEvery(Call)}.
+	 */
+	public String uploadJobJar(File binFile, String appName) throws IOException {
+		return onEvery(c -> c.uploadJobJar(binFile, appName));
+	}
+
+	/**
+	 * Deletes the binary from every server. See {@link #onEvery(Call)}.
+	 */
+	public String deleteBinary(String name) throws IOException {
+		return onEvery(c -> c.deleteBinary(name));
+	}
+
+	/**
+	 * Stops the health checks and closes the clients of all servers.
+	 */
+	@Override
+	public void close() {
+		scheduler.shutdownNow();
+		nodes.forEach(node -> node.client.close());
+	}
+
+	void checkHealth(Node node) {
+		try {
+			refreshContexts(node);
+		} catch (IOException | RuntimeException e) {
+			log.debug("Health check of {} failed", node, e);
+		}
+	}
+
+	private void refreshContexts(Node node) throws IOException {
+		List<String> contexts = call(node, JobServerClient::getContexts);
+		node.contexts.retainAll(contexts);
+		node.contexts.addAll(contexts);
+	}
+
+	private Node contextOwner(String context) {
+		for (Node node : nodes) {
+			if (node.contexts.contains(context))
+				return node;
+		}
+		return null;
+	}
+
+	private Node choose(Map<String, String> params) {
+		return policy.choose(candidates(), params);
+	}
+
+	/**
+	 * The healthy nodes, or all nodes if none is healthy so that calls still
+	 * have a chance to succeed.
+	 */
+	private List<Node> candidates() {
+		List<Node> healthy = nodes.stream().filter(Node::isHealthy).collect(Collectors.toList());
+		return healthy.isEmpty() ? nodes : healthy;
+	}
+
+	/**
+	 * Runs the call on the server owning the job. For an unknown job the call
+	 * itself is tried on every server until one does not answer 404.
+	 */
+	private <T> T onJobOwner(String jobId, Call<T> call) throws IOException {
+		Node owner = jobOwners.get(jobId);
+		if (owner != null)
+			return call(owner, call);
+		IOException failure = null;
+		for (Node node : candidates()) {
+			try {
+				T result = call(node, call);
+				jobOwners.put(jobId, node);
+				return result;
+			} catch (JobServerClientException e) {
+				if (e.getCode() != 404)
+					failure = e;
+			} catch (IOException e) {
+				failure = e;
+			}
+		}
+		if (failure != null)
+			throw failure;
+		throw new IOException("No job server knows job " + jobId);
+	}
+
+	private <T> T onAny(Call<T> call) throws IOException {
+		IOException failure = null;
+		for (Node node : candidates()) {
+			try {
+				return call(node, call);
+			} catch (IOException e) {
+				log.warn("Call to {} failed, trying next job server", node, e);
+				failure = e;
+			}
+		}
+		throw failure;
+	}
+
+	/**
+	 * Runs the call on every server, including the unhealthy ones. A server
+	 * answering 404, i.e. not having the context or binary, does not stop the
+	 * others.
+	 * 
+	 * @return the result of the last server that succeeded
+	 * @throws IOException the first failure other than 404 once every server
+	 *         was called, or a 404 if no server succeeded
+	 */
+	private String onEvery(Call<String> call) throws IOException {
+		String result = null;
+		boolean succeeded = false;
+		IOException notFound = null;
+		IOException failure = null;
+		for (Node node : nodes) {
+			try {
+				result = call(node, call);
+				succeeded = true;
+			} catch (JobServerClientException e) {
+				if (e.getCode() == 404)
+					notFound = e;
+				else if (failure == null)
+					failure = e;
+			} catch (IOException e) {
+				if (failure == null)
+					failure = e;
+			}
+		}
+		if (failure != null)
+			throw failure;
+		if (!succeeded)
+			throw notFound;
+		return result;
+	}
+
+	/**
+	 * Runs the task on every candidate node, skipping failing ones unless all fail.
+	 */
+	private List<Node> everyHealthy(NodeTask task) throws IOException {
+		List<Node> done = new ArrayList<>();
+		IOException failure = null;
+		for (Node node : candidates()) {
+			try {
+				task.run(node);
+				done.add(node);
+			} catch (IOException e) {
+				log.warn("Call to {} failed, skipping it", node, e);
+				failure = e;
+			}
+		}
+		if (done.isEmpty() && failure != null)
+			throw failure;
+		return done;
+	}
+
+	/**
+	 * A 4xx answer means the server is up but rejected this particular request.
+	 */
+	private static boolean isClientError(IOException e) {
+		if (!(e instanceof JobServerClientException))
+			return false;
+		int code = ((JobServerClientException) e).getCode();
+		return code >= 400 && code < 500;
+	}
+
+	/**
+	 * Calls a node, tracking its outstanding requests, latency and health.
+	 */
+	private <T> T call(Node node, Call<T> call) throws IOException {
+		node.outstanding.incrementAndGet();
+		long start = System.nanoTime();
+		try {
+			T result = call.call(node.client);
+			double millis = (System.nanoTime() - start) / 1e6;
+			node.latencyMillis = node.latencyMillis == 0 ? millis
+					: node.latencyMillis * (1 - LATENCY_WEIGHT) + millis * LATENCY_WEIGHT;
+			node.failures.set(0);
+			if (!node.healthy) {
+				log.info("Job server {} is back", node);
+				node.healthy = true;
+			}
+			return result;
+		} catch (IOException e) {
+			if (isClientError(e))
+				throw e;
+			if (node.failures.incrementAndGet() >= maxFailures && node.healthy) {
+				log.warn("Ejecting job server {} after {} failures", node, maxFailures);
+				node.healthy = false;
+			}
+			throw e;
+		} finally {
+			node.outstanding.decrementAndGet();
+		}
+	}
+}
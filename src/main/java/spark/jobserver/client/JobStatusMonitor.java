@@ -0,0 +1,196 @@
+package spark.jobserver.client;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Watches many jobs with a single <code>GET /jobs</code> per interval instead
+ * of polling each job separately.
+ * 
+ * <p>
+ * Each sweep lists the jobs once, whatever their status. Watched jobs listed
+ * as <code>STARTED</code> or <code>RUNNING</code> are not fetched. Only the
+ * watched jobs that are done, i.e. reached <code>FINISHED</code>,
+ * <code>OK</code> or <code>ERROR</code> since the last sweep, or that are
+ * missing from the listing, are fetched with <code>GET /jobs/&lt;jobId&gt;</code>
+ * to get their result. A sweep thus costs one request plus one per job done.
+ * 
+ * <pre>
+ * try (JobStatusMonitor monitor = new JobStatusMonitor(client, 2, TimeUnit.SECONDS)) {
+ *     CompletableFuture&lt;JobInfo&gt; done = monitor.watch(job.getJobId());
+ *     ...
+ * }
+ * </pre>
+ */
+@Slf4j
+public class JobStatusMonitor implements Closeable {
+	/**
+	 * Notified on the monitor thread when a watched job changes status.
+	 */
+	@FunctionalInterface
+	public interface Listener {
+		void onStatusChange(JobInfo job);
+	}
+
+	/**
+	 * Min number of jobs listed per sweep, more if more jobs are watched.
+	 */
+	static final int LIST_LIMIT = 10000;
+
+	private final JobServerClient client;
+	private final ScheduledExecutorService scheduler;
+	private final ConcurrentMap<String, Watch> watches = new ConcurrentHashMap<>();
+	private volatile boolean closed;
+
+	/**
+	 * Creates a monitor sweeping the job list of the client at a fixed delay
+	 * on its own daemon thread.
+	 */
+	public JobStatusMonitor(JobServerClient client, long interval, TimeUnit unit) {
+		this.client = client;
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "jobserver-status-monitor");
+			thread.setDaemon(true);
+			return thread;
+		});
+		scheduler.scheduleWithFixedDelay(this::sweep, interval, interval, unit);
+	}
+
+	/**
+	 * Watches a job until it is done.
+	 * 
+	 * @param jobId the id of the target job
+	 * @return future completed with the final job result; cancelling it stops watching
+	 */
+	public CompletableFuture<JobInfo> watch(String jobId) {
+		return watch(jobId, null);
+	}
+
+	/**
+	 * Watches a job until it is done, notifying the listener of each status change.
+	 * 
+	 * @param jobId the id of the target job
+	 * @param listener listener of status changes, may be null
+	 * @return future completed with the final job result; cancelling it stops
+	 *         watching. It fails with an <code>IllegalStateException</code> if
+	 *         the monitor is closed
+	 */
+	public CompletableFuture<JobInfo> watch(String jobId, Listener listener) {
+		Watch watch = closed ? null : watches.computeIfAbsent(jobId, id -> new Watch(listener));
+		if (watch == null || closed) {
+			if (watch != null)
+				watches.remove(jobId, watch);
+			CompletableFuture<JobInfo> failed = new CompletableFuture<>();
+			failed.completeExceptionally(new IllegalStateException("Job status monitor is closed"));
+			return failed;
+		}
+		return watch.future;
+	}
+
+	/**
+	 * @return number of jobs currently watched
+	 */
+	public int size() {
+		return watches.size();
+	}
+
+	/**
+	 * Stops sweeping and cancels the futures of all watched jobs.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		scheduler.shutdownNow();
+		watches.values().forEach(w -> w.future.cancel(false));
+		watches.clear();
+	}
+
+	void sweep() {
+		watches.values().removeIf(w -> w.future.isDone());
+		if (watches.isEmpty())
+			return;
+
+		List<JobInfo> jobs;
+		try {
+			jobs = client.getJobs(Math.max(LIST_LIMIT, watches.size()), null);
+		} catch (IOException | RuntimeException e) {
+			log.warn("Failed to list jobs, retrying next sweep", e);
+			return;
+		}
+
+		Map<String, Watch> left = new HashMap<>(watches);
+		for (JobInfo job : jobs) {
+			// done jobs are fetched below for their result
+			if (!job.isRunning())
+				continue;
+			Watch watch = left.remove(job.getJobId());
+			if (watch != null && job.getStatus() != watch.lastStatus) {
+				watch.lastStatus = job.getStatus();
+				notify(watch, job);
+			}
+		}
+		for (Map.Entry<String, Watch> e : left.entrySet())
+			finish(e.getKey(), e.getValue());
+	}
+
+	/**
+	 * Fetches the job result and completes the watch if the job is done. A job
+	 * not listed yet is fetched again on the next sweep.
+	 */
+	private void finish(String jobId, Watch watch) {
+		JobInfo result;
+		try {
+			result = client.getJobResult(jobId);
+		} catch (JobServerClientException e) {
+			if (e.getCode() == 404) {
+				watches.remove(jobId, watch);
+				watch.future.completeExceptionally(e);
+			} else {
+				log.warn("Failed to get result of job {}, retrying next sweep", jobId, e);
+			}
+			return;
+		} catch (IOException | RuntimeException e) {
+			log.warn("Failed to get result of job {}, retrying next sweep", jobId, e);
+			return;
+		}
+		if (result.getStatus() != watch.lastStatus) {
+			watch.lastStatus = result.getStatus();
+			notify(watch, result);
+		}
+		if (result.isFinished() || result.isError()) {
+			watches.remove(jobId, watch);
+			watch.future.complete(result);
+		}
+	}
+
+	private static void notify(Watch watch, JobInfo job) {
+		if (watch.listener == null)
+			return;
+		try {
+			watch.listener.onStatusChange(job);
+		} catch (RuntimeException e) {
+			log.warn("Listener failed on job {}", job.getJobId(), e);
+		}
+	}
+
+	private static class Watch {
+		final CompletableFuture<JobInfo> future = new CompletableFuture<>();
+		final Listener listener;
+		JobStatus lastStatus;
+
+		Watch(Listener listener) {
+			this.listener = listener;
+		}
+	}
+}
@@ -0,0 +1,16 @@
+package spark.jobserver.client;
+
+import java.util.Map;
+
+import lombok.*;
+
+/**
+ * One job of a batch started with {@link JobServerClient#startJobs(java.util.List)}.
+ * The data and params are those of {@link JobServerClient#startJob(String, Map)}.
+ */
+@Getter
+@AllArgsConstructor
+public class JobSubmission {
+	private String data;
+	private Map<String, String> params;
+}
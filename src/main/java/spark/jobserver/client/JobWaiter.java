@@ -0,0 +1,168 @@
+package spark.jobserver.client;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Waits for jobs to reach a terminal status by polling <code>GET /jobs/&lt;jobId&gt;</code>
+ * with exponential backoff and jitter.
+ * 
+ * <p>
+ * The first poll of a job is scheduled at half the average duration observed
+ * for earlier jobs of the same <code>classPath</code>, so short jobs are picked
+ * up quickly and long jobs are not polled needlessly.
+ * 
+ * <p>
+ * A poll failing with an I/O error, such as a timeout or an open circuit, is
+ * repeated at the next backoff step. The wait only fails when the job is
+ * unknown (404), on the timeout, or when the client is closed.
+ */
+@Slf4j
+class JobWaiter {
+	static final long MIN_DELAY_MILLIS = 100;
+	static final long MAX_DELAY_MILLIS = TimeUnit.SECONDS.toMillis(30);
+	private static final double JITTER = 0.2;
+	private static final double HISTORY_WEIGHT = 0.3;
+
+	private final JobServerClient client;
+	private final ScheduledExecutorService scheduler;
+	private final ConcurrentMap<String, Long> expectedDurations = new ConcurrentHashMap<>();
+	private final Set<Wait> waits = ConcurrentHashMap.newKeySet();
+
+	JobWaiter(JobServerClient client, ScheduledExecutorService scheduler) {
+		this.client = client;
+		this.scheduler = scheduler;
+	}
+
+	/**
+	 * @param classPath class of the job if known, used to seed the first delay
+	 */
+	CompletableFuture<JobInfo> await(String jobId, String classPath, long timeoutMillis) {
+		Wait wait = new Wait(jobId, classPath);
+		waits.add(wait);
+		wait.result.whenComplete((job, e) -> waits.remove(wait));
+		ScheduledFuture<?> timeout;
+		try {
+			timeout = scheduler.schedule(() -> wait.result.completeExceptionally(
+					new TimeoutException("Job " + jobId + " not done after " + timeoutMillis + "ms")), timeoutMillis,
+					TimeUnit.MILLISECONDS);
+		} catch (RejectedExecutionException e) {
+			wait.result.completeExceptionally(e);
+			return wait.result;
+		}
+		wait.result.whenComplete((job, e) -> {
+			timeout.cancel(false);
+			wait.stop();
+		});
+		wait.schedule(initialDelay(classPath));
+		return wait.result;
+	}
+
+	/**
+	 * Fails the waits in progress, whose polls would never run once the
+	 * scheduler is shut down.
+	 */
+	void close() {
+		for (Wait wait : waits)
+			wait.result.completeExceptionally(new IllegalStateException("Client closed while waiting for job "
+					+ wait.jobId));
+	}
+
+	long initialDelay(String classPath) {
+		Long expected = classPath == null ? null : expectedDurations.get(classPath);
+		return expected == null ? MIN_DELAY_MILLIS : clamp(expected / 2);
+	}
+
+	void record(JobInfo job) {
+		long duration = job.getDurationMillis();
+		if (job.getClassPath() == null || duration < 0)
+			return;
+		expectedDurations.merge(job.getClassPath(), duration,
+				(old, d) -> (long) (old * (1 - HISTORY_WEIGHT) + d * HISTORY_WEIGHT));
+	}
+
+	private static long clamp(long delay) {
+		return Math.max(MIN_DELAY_MILLIS, Math.min(MAX_DELAY_MILLIS, delay));
+	}
+
+	private static long jitter(long delay) {
+		return (long) (delay * (1 + JITTER * (2 * ThreadLocalRandom.current().nextDouble() - 1)));
+	}
+
+	private static boolean notFound(Throwable e) {
+		return e instanceof JobServerClientException && ((JobServerClientException) e).getCode() == 404;
+	}
+
+	private class Wait {
+		final CompletableFuture<JobInfo> result = new CompletableFuture<>();
+		final String jobId;
+		String classPath;
+		long delay;
+		volatile ScheduledFuture<?> next;
+		volatile CompletableFuture<JobInfo> inFlight;
+
+		Wait(String jobId, String classPath) {
+			this.jobId = jobId;
+			this.classPath = classPath;
+		}
+
+		void schedule(long delay) {
+			this.delay = delay;
+			if (result.isDone())
+				return;
+			try {
+				next = scheduler.schedule(this::poll, jitter(delay), TimeUnit.MILLISECONDS);
+			} catch (RejectedExecutionException e) {
+				result.completeExceptionally(e);
+			}
+		}
+
+		void poll() {
+			if (result.isDone())
+				return;
+			CompletableFuture<JobInfo> call = client.getJobResultAsync(jobId);
+			inFlight = call;
+			call.whenComplete((job, e) -> {
+				Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+				if (cause instanceof IOException && !notFound(cause)) {
+					log.debug("Failed to poll job {}, polling again: {}", jobId, cause.toString());
+					schedule(clamp(delay * 2));
+				} else if (cause != null) {
+					result.completeExceptionally(cause);
+				} else if (job.isFinished() || job.isError()) {
+					if (job.isFinished())
+						record(job);
+					result.complete(job);
+				} else {
+					if (classPath == null && job.getClassPath() != null) {
+						classPath = job.getClassPath();
+						schedule(Math.max(delay, initialDelay(classPath)));
+					} else {
+						schedule(clamp(delay * 2));
+					}
+				}
+			});
+		}
+
+		void stop() {
+			ScheduledFuture<?> scheduled = next;
+			if (scheduled != null)
+				scheduled.cancel(false);
+			CompletableFuture<JobInfo> call = inFlight;
+			if (call != null && !call.isDone())
+				call.cancel(true);
+		}
+	}
+}
@@ -0,0 +1,201 @@
+package spark.jobserver.client;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.Map;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Hand-written Gson adapters of the response types, bound through
+ * <code>@JsonAdapter</code> so that responses are read without reflection.
+ * Unknown fields are skipped as the reflective adapter would.
+ */
+final class JsonAdapters {
+	private JsonAdapters() {
+	}
+
+	static class JobInfoFactory implements TypeAdapterFactory {
+		@SuppressWarnings("unchecked")
+		@Override
+		public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+			TypeAdapter<Date> dates = gson.getAdapter(Date.class);
+			TypeAdapter<JsonElement> elements = gson.getAdapter(JsonElement.class);
+			return (TypeAdapter<T>) new TypeAdapter<JobInfo>() {
+				@Override
+				public void write(JsonWriter out, JobInfo job) throws IOException {
+					if (job == null) {
+						out.nullValue();
+						return;
+					}
+					out.beginObject();
+					out.name("jobId").value(job.getJobId());
+					out.name("status").value(job.getStatus() == null ? null : job.getStatus().name());
+					out.name("context").value(job.getContext());
+					out.name("classPath").value(job.getClassPath());
+					out.name("duration").value(job.getDuration());
+					out.name("startTime").value(Times.formatEpochMillis(job.getStartTimeEpochMillis()));
+					out.name("result");
+					if (job.getResult() == null)
+						out.nullValue();
+					else
+						elements.write(out, job.getResult());
+					out.endObject();
+				}
+
+				@Override
+				public JobInfo read(JsonReader in) throws IOException {
+					if (in.peek() == JsonToken.NULL) {
+						in.nextNull();
+						return null;
+					}
+					JobInfo job = new JobInfo();
+					in.beginObject();
+					while (in.hasNext()) {
+						String name = in.nextName();
+						switch (name) {
+						case "jobId":
+							job.setJobId(nextString(in));
+							break;
+						case "status":
+							job.setStatus(status(nextString(in)));
+							break;
+						case "context":
+							job.setContext(nextString(in));
+							break;
+						case "classPath":
+							job.setClassPath(nextString(in));
+							break;
+						case "duration":
+							job.setDuration(nextString(in));
+							break;
+						case "startTime":
+							job.setStartTimeEpochMillis(epochMillis(in, dates));
+							break;
+						case "result":
+							job.setResult(elements.read(in));
+							break;
+						default:
+							in.skipValue();
+						}
+					}
+					in.endObject();
+					return job;
+				}
+			};
+		}
+	}
+
+	static class BinaryFactory implements TypeAdapterFactory {
+		@SuppressWarnings("unchecked")
+		@Override
+		public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+			TypeAdapter<Date> dates = gson.getAdapter(Date.class);
+			return (TypeAdapter<T>) new TypeAdapter<Binary>() {
+				@Override
+				public void write(JsonWriter out, Binary binary) throws IOException {
+					if (binary == null) {
+						out.nullValue();
+						return;
+					}
+					out.beginObject();
+					out.name("binary-type").value(binary.getBinary_type());
+					out.name("upload-time").value(Times.formatEpochMillis(binary.getUploadTimeEpochMillis()));
+					out.endObject();
+				}
+
+				@Override
+				public Binary read(JsonReader in) throws IOException {
+					if (in.peek() == JsonToken.NULL) {
+						in.nextNull();
+						return null;
+					}
+					Binary binary = new Binary();
+					in.beginObject();
+					while (in.hasNext()) {
+						String name = in.nextName();
+						if ("binary-type".equals(name))
+							binary.setBinary_type(nextString(in));
+						else if ("upload-time".equals(name))
+							binary.setUploadTimeEpochMillis(epochMillis(in, dates));
+						else
+							in.skipValue();
+					}
+					in.endObject();
+					return binary;
+				}
+			};
+		}
+	}
+
+	/**
+	 * Binds the whole configuration object of <code>GET /jobs/&lt;jobId&gt;/config</code>
+	 * to {@link JobConfig#getConfigs()}.
+	 */
+	static class JobConfigFactory implements TypeAdapterFactory {
+		@SuppressWarnings("unchecked")
+		@Override
+		public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+			TypeAdapter<Map<String, Object>> maps = gson.getAdapter(new TypeToken<Map<String, Object>>() {
+			});
+			return (TypeAdapter<T>) new TypeAdapter<JobConfig>() {
+				@Override
+				public void write(JsonWriter out, JobConfig config) throws IOException {
+					maps.write(out, config == null ? null : config.getConfigs());
+				}
+
+				@Override
+				public JobConfig read(JsonReader in) throws IOException {
+					Map<String, Object> configs = maps.read(in);
+					if (configs == null)
+						return null;
+					JobConfig config = new JobConfig();
+					config.setConfigs(configs);
+					return config;
+				}
+			};
+		}
+	}
+
+	private static String nextString(JsonReader in) throws IOException {
+		if (in.peek() == JsonToken.NULL) {
+			in.nextNull();
+			return null;
+		}
+		return in.nextString();
+	}
+
+	/**
+	 * Parses ISO-8601 times with {@link Times}, falling back to Gson's
+	 * <code>DateFormat</code> adapter, which is synchronized, for other formats.
+	 */
+	private static long epochMillis(JsonReader in, TypeAdapter<Date> dates) throws IOException {
+		String time = nextString(in);
+		long millis = Times.parseEpochMillis(time);
+		if (millis != Times.UNKNOWN || time == null)
+			return millis;
+		Date date = dates.fromJsonTree(new JsonPrimitive(time));
+		return date == null ? Times.UNKNOWN : date.getTime();
+	}
+
+	/**
+	 * Maps unknown status names to null like Gson's enum adapter does.
+	 */
+	private static JobStatus status(String name) {
+		if (name == null)
+			return null;
+		try {
+			return JobStatus.valueOf(name);
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+	}
+}
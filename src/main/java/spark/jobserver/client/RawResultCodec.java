@@ -0,0 +1,108 @@
+package spark.jobserver.client;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import okio.Okio;
+import util.Pojo;
+
+/**
+ * {@link ResultCodec} returning the <code>result</code> field as the bytes of
+ * its JSON text, for callers handing it on to another parser or to storage.
+ * The result is a read-only <code>ByteBuffer</code> over the response bytes,
+ * the result itself is neither parsed nor copied. Only
+ * <code>ByteBuffer.class</code> is accepted as result type, and the body must
+ * be in an ASCII-compatible charset such as UTF-8.
+ */
+public class RawResultCodec implements ResultCodec {
+	@SuppressWarnings("unchecked")
+	@Override
+	public <T> JobResult<T> decode(InputStream body, Charset charset, Type resultType) throws IOException {
+		if (resultType != ByteBuffer.class)
+			throw new IllegalArgumentException("Raw results are read as ByteBuffer, not " + resultType);
+		byte[] bytes = Okio.buffer(Okio.source(body)).readByteArray();
+		JsonObject envelope = new JsonObject();
+		ByteBuffer result = null;
+		try {
+			int i = skipWhitespace(bytes, 0);
+			expect(bytes, i, '{');
+			i = skipWhitespace(bytes, i + 1);
+			while (bytes[i] != '}') {
+				int nameEnd = skipString(bytes, i);
+				String name = Pojo.gson.fromJson(new String(bytes, i, nameEnd - i, charset), String.class);
+				i = skipWhitespace(bytes, nameEnd);
+				expect(bytes, i, ':');
+				int start = skipWhitespace(bytes, i + 1);
+				int end = skipValue(bytes, start);
+				if ("result".equals(name) && !GsonResultCodec.isError(envelope))
+					result = ByteBuffer.wrap(bytes, start, end - start).slice().asReadOnlyBuffer();
+				else
+					envelope.add(name,
+							Pojo.gson.fromJson(new String(bytes, start, end - start, charset), JsonElement.class));
+				i = skipWhitespace(bytes, end);
+				if (bytes[i] == ',')
+					i = skipWhitespace(bytes, i + 1);
+			}
+		} catch (ArrayIndexOutOfBoundsException e) {
+			throw new IOException("Truncated job response", e);
+		}
+		return (JobResult<T>) JobResult.of(envelope, result);
+	}
+
+	private static void expect(byte[] bytes, int i, char c) throws IOException {
+		if (bytes[i] != c)
+			throw new IOException("Expected '" + c + "' at offset " + i + " of the job response");
+	}
+
+	private static int skipWhitespace(byte[] bytes, int i) {
+		while (bytes[i] == ' ' || bytes[i] == '\n' || bytes[i] == '\r' || bytes[i] == '\t')
+			i++;
+		return i;
+	}
+
+	/**
+	 * @return offset after the closing quote of the string starting at i
+	 */
+	private static int skipString(byte[] bytes, int i) throws IOException {
+		expect(bytes, i, '"');
+		i++;
+		while (bytes[i] != '"')
+			i += bytes[i] == '\\' ? 2 : 1;
+		return i + 1;
+	}
+
+	/**
+	 * @return offset after the value starting at i
+	 */
+	private static int skipValue(byte[] bytes, int i) throws IOException {
+		byte first = bytes[i];
+		if (first == '"')
+			return skipString(bytes, i);
+		if (first == '{' || first == '[') {
+			int depth = 0;
+			do {
+				byte b = bytes[i];
+				if (b == '"') {
+					i = skipString(bytes, i);
+					continue;
+				}
+				if (b == '{' || b == '[')
+					depth++;
+				else if (b == '}' || b == ']')
+					depth--;
+				i++;
+			} while (depth > 0);
+			return i;
+		}
+		while (bytes[i] != ',' && bytes[i] != '}' && bytes[i] != ']' && bytes[i] != ' ' && bytes[i] != '\n'
+				&& bytes[i] != '\r' && bytes[i] != '\t')
+			i++;
+		return i;
+	}
+}
@@ -0,0 +1,160 @@
+package spark.jobserver.client;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Response bodies kept by a {@link JobServerClient} to avoid repeating GETs.
+ * 
+ * <p>
+ * Listings such as <code>GET /contexts</code> are kept for a short TTL. A
+ * listing read in the last quarter of its TTL is still served, and reloaded in
+ * the background so that steady callers never wait for it. Listings are
+ * invalidated by the client's own changes, and a load started before an
+ * invalidation is not stored.
+ * 
+ * <p>
+ * Results and configs of jobs in <code>FINISHED</code>, <code>OK</code> or
+ * <code>ERROR</code> never change and are kept without TTL in a size-bounded
+ * LRU map.
+ */
+class ResponseCache {
+	private static class Listing {
+		final String json;
+		final long loadedAt = System.currentTimeMillis();
+		boolean refreshing;
+
+		Listing(String json) {
+			this.json = json;
+		}
+	}
+
+	private final long ttlMillis;
+	private final int maxJobs;
+	private final Function<String, CompletableFuture<String>> fetch;
+	private final Map<String, Listing> listings = new HashMap<>();
+	private final Map<String, String> jobs;
+	private long generation;
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder refreshes = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+
+	/**
+	 * @param ttlMillis TTL of listings, 0 to not cache them
+	 * @param maxJobs max job responses kept, 0 to not cache them
+	 * @param fetch loads the body of a path for background refreshes
+	 */
+	ResponseCache(long ttlMillis, int maxJobs, Function<String, CompletableFuture<String>> fetch) {
+		this.ttlMillis = ttlMillis;
+		this.maxJobs = maxJobs;
+		this.fetch = fetch;
+		this.jobs = new LinkedHashMap<String, String>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+				if (size() <= ResponseCache.this.maxJobs)
+					return false;
+				evictions.increment();
+				return true;
+			}
+		};
+	}
+
+	/**
+	 * @return the cached listing, or null if it has to be loaded
+	 */
+	String getListing(String path) {
+		if (ttlMillis <= 0)
+			return null;
+		boolean refresh = false;
+		long token;
+		String json;
+		synchronized (this) {
+			Listing listing = listings.get(path);
+			long age = listing == null ? Long.MAX_VALUE : System.currentTimeMillis() - listing.loadedAt;
+			if (age >= ttlMillis) {
+				misses.increment();
+				return null;
+			}
+			hits.increment();
+			json = listing.json;
+			if (age >= ttlMillis * 3 / 4 && !listing.refreshing) {
+				listing.refreshing = true;
+				refresh = true;
+			}
+			token = generation;
+		}
+		if (refresh) {
+			refreshes.increment();
+			fetch.apply(path).whenComplete((body, e) -> {
+				if (body != null)
+					putListing(path, body, token);
+				else
+					clearRefreshing(path);
+			});
+		}
+		return json;
+	}
+
+	/**
+	 * @return token to pass to {@link #putListing(String, String, long)} once loaded
+	 */
+	synchronized long generation() {
+		return generation;
+	}
+
+	/**
+	 * Stores a listing unless it was invalidated since its load started.
+	 */
+	synchronized void putListing(String path, String json, long token) {
+		if (ttlMillis > 0 && token == generation)
+			listings.put(path, new Listing(json));
+	}
+
+	synchronized void invalidate(String path) {
+		generation++;
+		listings.remove(path);
+	}
+
+	/**
+	 * @return the cached body of a done job, or null if it has to be loaded
+	 */
+	String getJob(String path) {
+		if (maxJobs <= 0)
+			return null;
+		String json;
+		synchronized (this) {
+			json = jobs.get(path);
+		}
+		(json == null ? misses : hits).increment();
+		return json;
+	}
+
+	synchronized boolean containsJob(String path) {
+		return jobs.containsKey(path);
+	}
+
+	/**
+	 * Stores the body of a job known to be done.
+	 */
+	synchronized void putJob(String path, String json) {
+		if (maxJobs > 0)
+			jobs.put(path, json);
+	}
+
+	CacheStats stats() {
+		return new CacheStats(hits.sum(), misses.sum(), refreshes.sum(), evictions.sum());
+	}
+
+	private synchronized void clearRefreshing(String path) {
+		Listing listing = listings.get(path);
+		if (listing != null)
+			listing.refreshing = false;
+	}
+}
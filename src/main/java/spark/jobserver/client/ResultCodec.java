@@ -0,0 +1,29 @@
+package spark.jobserver.client;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Type;
+import java.nio.charset.Charset;
+
+/**
+ * Binds a job response, such as the one of <code>GET /jobs/&lt;jobId&gt;</code>,
+ * in a single pass over the body: the <code>result</code> field goes straight
+ * into the requested type, without a <code>JsonElement</code> tree in between.
+ * 
+ * <p>
+ * The result of a failed job is its error. It is kept in the result of
+ * {@link JobResult#getJob()} when the <code>status</code> field comes first,
+ * as the job server writes it.
+ * 
+ * @see GsonResultCodec
+ * @see JacksonResultCodec
+ * @see RawResultCodec
+ */
+public interface ResultCodec {
+	/**
+	 * @param body the response body, closed by the caller
+	 * @param charset charset of the body
+	 * @param resultType type of the <code>result</code> field
+	 */
+	<T> JobResult<T> decode(InputStream body, Charset charset, Type resultType) throws IOException;
+}
@@ -0,0 +1,54 @@
+package spark.jobserver.client;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Chooses the job server of a {@link JobServerCluster} that receives a new
+ * job or context.
+ */
+@FunctionalInterface
+public interface RoutingPolicy {
+
+	/**
+	 * @param nodes the healthy nodes, never empty
+	 * @param params parameters of the job or context being created, may be null
+	 * @return one of the given nodes
+	 */
+	JobServerCluster.Node choose(List<JobServerCluster.Node> nodes, Map<String, String> params);
+
+	/**
+	 * Picks the node with the fewest requests in flight.
+	 */
+	RoutingPolicy LEAST_OUTSTANDING = (nodes, params) -> nodes.stream()
+			.min(Comparator.comparingInt(JobServerCluster.Node::getOutstanding)).get();
+
+	/**
+	 * Picks the node with the lowest moving average of response times.
+	 */
+	RoutingPolicy LATENCY_EWMA = (nodes, params) -> nodes.stream()
+			.min(Comparator.comparingDouble(JobServerCluster.Node::getLatencyMillis)).get();
+
+	/**
+	 * Spreads contexts over the nodes by rendezvous hashing of the context
+	 * name, or of the application name for jobs without context, so that the
+	 * same name always lands on the same node while it is healthy. Work without
+	 * either name goes through the fallback policy.
+	 */
+	static RoutingPolicy contextAffinity(RoutingPolicy fallback) {
+		return (nodes, params) -> {
+			String key = params == null ? null
+					: params.getOrDefault(Constants.PARAM_CONTEXT, params.get(Constants.PARAM_APP_NAME));
+			if (key == null)
+				return fallback.choose(nodes, params);
+			return nodes.stream().max(Comparator.comparingInt(node -> {
+				int h = key.hashCode() * 31 + node.getName().hashCode();
+				h ^= h >>> 16;
+				h *= 0x85ebca6b;
+				h ^= h >>> 13;
+				return h;
+			})).get();
+		};
+	}
+}
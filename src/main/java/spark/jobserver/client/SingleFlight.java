@@ -0,0 +1,105 @@
+package spark.jobserver.client;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * Lets concurrent identical calls share one execution. The first caller of a
+ * key runs the call, callers arriving while it is in flight get its outcome.
+ * Synchronous and asynchronous callers of the same key share the same call.
+ * 
+ * <p>
+ * The shared value is handed to every caller, so mutable values must be
+ * copied by the caller.
+ */
+class SingleFlight {
+	interface Call<T> {
+		T call() throws IOException;
+	}
+
+	private final ConcurrentMap<String, CompletableFuture<?>> calls = new ConcurrentHashMap<>();
+
+	/**
+	 * Runs the call on the calling thread, or waits for the one in flight.
+	 */
+	<T> T call(String key, Call<T> call) throws IOException {
+		CompletableFuture<T> mine = new CompletableFuture<>();
+		CompletableFuture<T> running = running(key, mine);
+		if (running != null)
+			return join(running);
+		try {
+			T value = call.call();
+			calls.remove(key, mine);
+			mine.complete(value);
+			return value;
+		} catch (IOException | RuntimeException | Error e) {
+			calls.remove(key, mine);
+			mine.completeExceptionally(e);
+			throw e;
+		}
+	}
+
+	/**
+	 * Starts the call, or returns the one in flight. Cancelling the returned
+	 * future does not cancel the call, derive a future per caller instead.
+	 */
+	<T> CompletableFuture<T> callAsync(String key, Supplier<CompletableFuture<T>> call) {
+		CompletableFuture<T> mine = new CompletableFuture<>();
+		CompletableFuture<T> running = running(key, mine);
+		if (running != null)
+			return running;
+		CompletableFuture<T> response;
+		try {
+			response = call.get();
+		} catch (RuntimeException e) {
+			response = new CompletableFuture<>();
+			response.completeExceptionally(e);
+		}
+		response.whenComplete((value, e) -> {
+			calls.remove(key, mine);
+			if (e != null)
+				mine.completeExceptionally(e);
+			else
+				mine.complete(value);
+		});
+		return mine;
+	}
+
+	/**
+	 * @return number of calls in flight
+	 */
+	int size() {
+		return calls.size();
+	}
+
+	@SuppressWarnings("unchecked")
+	private <T> CompletableFuture<T> running(String key, CompletableFuture<T> mine) {
+		return (CompletableFuture<T>) calls.putIfAbsent(key, mine);
+	}
+
+	private static <T> T join(CompletableFuture<T> running) throws IOException {
+		try {
+			return running.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for a shared call");
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof CompletionException && cause.getCause() != null)
+				cause = cause.getCause();
+			if (cause instanceof IOException)
+				throw (IOException) cause;
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw new IOException(cause);
+		}
+	}
+}
@@ -0,0 +1,282 @@
+package spark.jobserver.client;
+
+import java.io.Closeable;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import lombok.Builder;
+
+/**
+ * Admission control in front of {@link JobServerClient#startJob(String, Map)}.
+ * 
+ * <p>
+ * At most <code>maxInFlightPerContext</code> jobs run at once in each context
+ * (jobs without <code>Constants.PARAM_CONTEXT</code> share one limit), and jobs
+ * are started at most at <code>submitsPerSecond</code> on the server. Excess
+ * submissions wait in a bounded queue, highest priority first, and are started
+ * as running jobs reach <code>FINISHED</code>, <code>OK</code> or <code>ERROR</code>.
+ * Running jobs are tracked with a {@link JobStatusMonitor}.
+ * 
+ * <pre>
+ * SubmissionScheduler scheduler = SubmissionScheduler.builder().client(client)
+ *     .maxInFlightPerContext(4).submitsPerSecond(20).build();
+ * JobInfo started = scheduler.submit(data, params, 0).get();
+ * </pre>
+ */
+public class SubmissionScheduler implements Closeable {
+	public static final int DEFAULT_MAX_IN_FLIGHT_PER_CONTEXT = 4;
+	public static final int DEFAULT_QUEUE_CAPACITY = 10000;
+	public static final long DEFAULT_POLL_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(2);
+
+	private final JobServerClient client;
+	private final int maxInFlightPerContext;
+	private final int queueCapacity;
+	private final TokenBucket rateLimit;
+	private final JobStatusMonitor monitor;
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition changed = lock.newCondition();
+	private final TreeSet<Pending> queue = new TreeSet<>();
+	private final Map<String, Integer> inFlight = new HashMap<>();
+	private final Thread dispatcher;
+	private volatile boolean closed;
+
+	private final AtomicLong sequence = new AtomicLong();
+	private final AtomicLong dispatched = new AtomicLong();
+	private final AtomicLong totalWaitNanos = new AtomicLong();
+	private final AtomicLong maxWaitNanos = new AtomicLong();
+
+	/**
+	 * @param client the client starting the jobs
+	 * @param maxInFlightPerContext max running jobs per context
+	 * @param submitsPerSecond max rate of job starts on the server, or zero for no limit
+	 * @param burst starts allowed at once above the rate, defaults to one second worth
+	 * @param queueCapacity max waiting submissions
+	 * @param pollIntervalMillis interval of the status sweeps releasing finished jobs
+	 */
+	@Builder
+	private SubmissionScheduler(JobServerClient client, int maxInFlightPerContext, double submitsPerSecond,
+			int burst, int queueCapacity, long pollIntervalMillis) {
+		this.client = client;
+		this.maxInFlightPerContext = maxInFlightPerContext > 0 ? maxInFlightPerContext
+				: DEFAULT_MAX_IN_FLIGHT_PER_CONTEXT;
+		this.queueCapacity = queueCapacity > 0 ? queueCapacity : DEFAULT_QUEUE_CAPACITY;
+		this.rateLimit = submitsPerSecond > 0
+				? new TokenBucket(submitsPerSecond, burst > 0 ? burst : (int) Math.ceil(submitsPerSecond)) : null;
+		this.monitor = new JobStatusMonitor(client,
+				pollIntervalMillis > 0 ? pollIntervalMillis : DEFAULT_POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+		this.dispatcher = new Thread(this::dispatch, "jobserver-submission-scheduler");
+		dispatcher.setDaemon(true);
+		dispatcher.start();
+	}
+
+	/**
+	 * Queues a job to be started once its context and the rate limit allow it.
+	 * 
+	 * @param data job data, see {@link JobServerClient#startJob(String, Map)}
+	 * @param params job parameters
+	 * @param priority higher values are started first
+	 * @return future completed with the response of <code>POST /jobs</code>, or
+	 *         failed with <code>RejectedExecutionException</code> if the queue is full
+	 */
+	public CompletableFuture<JobInfo> submit(String data, Map<String, String> params, int priority) {
+		Pending pending = new Pending(data, params, priority, sequence.getAndIncrement());
+		lock.lock();
+		try {
+			if (closed || queue.size() >= queueCapacity) {
+				pending.future.completeExceptionally(new RejectedExecutionException(
+						closed ? "Scheduler is closed" : "Submission queue is full (" + queueCapacity + ")"));
+				return pending.future;
+			}
+			queue.add(pending);
+			changed.signal();
+		} finally {
+			lock.unlock();
+		}
+		return pending.future;
+	}
+
+	/**
+	 * @return number of submissions waiting to be started
+	 */
+	public int getQueueDepth() {
+		lock.lock();
+		try {
+			return queue.size();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @param context a context name, or null for jobs without context
+	 * @return number of jobs started and not yet done in the context
+	 */
+	public int getInFlight(String context) {
+		lock.lock();
+		try {
+			return inFlight.getOrDefault(key(context), 0);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return average time submissions waited in the queue, in millis
+	 */
+	public double getAverageWaitMillis() {
+		long count = dispatched.get();
+		return count == 0 ? 0 : totalWaitNanos.get() / 1e6 / count;
+	}
+
+	/**
+	 * @return longest time a submission waited in the queue, in millis
+	 */
+	public double getMaxWaitMillis() {
+		return maxWaitNanos.get() / 1e6;
+	}
+
+	/**
+	 * Stops starting jobs and fails the waiting submissions. Jobs already
+	 * started keep running.
+	 */
+	@Override
+	public void close() {
+		lock.lock();
+		try {
+			closed = true;
+			for (Pending pending : queue)
+				pending.future.completeExceptionally(new RejectedExecutionException("Scheduler is closed"));
+			queue.clear();
+			changed.signal();
+		} finally {
+			lock.unlock();
+		}
+		dispatcher.interrupt();
+		monitor.close();
+	}
+
+	private void dispatch() {
+		while (!closed) {
+			try {
+				start(next());
+			} catch (InterruptedException e) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Takes the highest priority submission whose context has room, waiting
+	 * for the rate limit, and counts it as in flight.
+	 */
+	private Pending next() throws InterruptedException {
+		lock.lockInterruptibly();
+		try {
+			while (true) {
+				Pending pending = firstRunnable();
+				if (pending != null) {
+					long wait = rateLimit == null ? 0 : rateLimit.tryAcquire();
+					if (wait == 0) {
+						queue.remove(pending);
+						inFlight.merge(pending.context, 1, Integer::sum);
+						return pending;
+					}
+					changed.awaitNanos(wait);
+				} else {
+					changed.await();
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private Pending firstRunnable() {
+		Iterator<Pending> it = queue.iterator();
+		while (it.hasNext()) {
+			Pending pending = it.next();
+			if (pending.future.isCancelled())
+				it.remove();
+			else if (inFlight.getOrDefault(pending.context, 0) < maxInFlightPerContext)
+				return pending;
+		}
+		return null;
+	}
+
+	private void start(Pending pending) {
+		long waited = System.nanoTime() - pending.queuedAt;
+		dispatched.incrementAndGet();
+		totalWaitNanos.addAndGet(waited);
+		maxWaitNanos.accumulateAndGet(waited, Math::max);
+
+		CompletableFuture<JobInfo> call;
+		try {
+			call = client.startJobAsync(pending.data, pending.params);
+		} catch (RuntimeException e) {
+			// e.g. invalid params, thrown before the request is sent
+			release(pending.context);
+			pending.future.completeExceptionally(e);
+			return;
+		}
+		call.whenComplete((job, e) -> {
+			if (e != null) {
+				release(pending.context);
+				pending.future.completeExceptionally(e);
+				return;
+			}
+			if (job.getJobId() == null || job.isFinished() || job.isError())
+				release(pending.context);
+			else
+				monitor.watch(job.getJobId()).whenComplete((done, failure) -> release(pending.context));
+			pending.future.complete(job);
+		});
+	}
+
+	private void release(String context) {
+		lock.lock();
+		try {
+			inFlight.computeIfPresent(context, (c, n) -> n > 1 ? n - 1 : null);
+			changed.signal();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private static String key(String context) {
+		return context == null ? "" : context;
+	}
+
+	private static class Pending implements Comparable<Pending> {
+		final CompletableFuture<JobInfo> future = new CompletableFuture<>();
+		final String data;
+		final Map<String, String> params;
+		final String context;
+		final int priority;
+		final long sequence;
+		final long queuedAt = System.nanoTime();
+
+		Pending(String data, Map<String, String> params, int priority, long sequence) {
+			this.data = data;
+			this.params = params;
+			this.context = key(params == null ? null : params.get(Constants.PARAM_CONTEXT));
+			this.priority = priority;
+			this.sequence = sequence;
+		}
+
+		@Override
+		public int compareTo(Pending other) {
+			if (priority != other.priority)
+				return Integer.compare(other.priority, priority);
+			return Long.compare(sequence, other.sequence);
+		}
+	}
+}
@@ -0,0 +1,109 @@
+package spark.jobserver.client;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoField;
+import java.time.temporal.TemporalAccessor;
+
+/**
+ * Thread-safe parsing of the times and durations reported by the job server,
+ * such as <code>"2017-07-20T10:11:12.345+08:00"</code> and
+ * <code>"12.345 secs"</code>. Unknown values are -1.
+ */
+final class Times {
+	static final long UNKNOWN = -1;
+	private static final long MAX_FAST_MILLIS = Long.MAX_VALUE / 10000;
+
+	/**
+	 * Times with an offset or <code>Z</code>, and local times taken as UTC.
+	 */
+	private static final DateTimeFormatter OFFSET = DateTimeFormatter.ISO_OFFSET_DATE_TIME;
+	private static final DateTimeFormatter LOCAL = DateTimeFormatter.ISO_LOCAL_DATE_TIME.withZone(ZoneOffset.UTC);
+
+	private Times() {
+	}
+
+	/**
+	 * @return the epoch millis of an ISO-8601 date-time, or -1 if it is null
+	 *         or not ISO-8601
+	 */
+	static long parseEpochMillis(String time) {
+		if (time == null)
+			return UNKNOWN;
+		try {
+			TemporalAccessor parsed = (hasOffset(time) ? OFFSET : LOCAL).parse(time);
+			long seconds = parsed.getLong(ChronoField.INSTANT_SECONDS);
+			return seconds * 1000 + parsed.get(ChronoField.MILLI_OF_SECOND);
+		} catch (DateTimeParseException e) {
+			return UNKNOWN;
+		}
+	}
+
+	/**
+	 * @return the time in ISO-8601 at UTC, or null if unknown
+	 */
+	static String formatEpochMillis(long millis) {
+		return millis < 0 ? null : OFFSET.format(Instant.ofEpochMilli(millis).atOffset(ZoneOffset.UTC));
+	}
+
+	/**
+	 * Parses durations such as <code>"12.345 secs"</code> without allocating
+	 * for the usual fixed-point form.
+	 * 
+	 * @return the duration in millis, or -1 if it cannot be parsed
+	 */
+	static long parseDurationMillis(String duration) {
+		if (duration == null)
+			return UNKNOWN;
+		int end = duration.indexOf(' ');
+		if (end < 0)
+			end = duration.length();
+		long millis = 0;
+		int scale = -1; // digits seen after the point, -1 before it
+		for (int i = 0; i < end; i++) {
+			char c = duration.charAt(i);
+			if (c == '.' && scale < 0) {
+				scale = 0;
+			} else if (c >= '0' && c <= '9') {
+				if (millis > MAX_FAST_MILLIS)
+					return parseDouble(duration, end);
+				if (scale < 3) {
+					millis = millis * 10 + (c - '0');
+					if (scale >= 0)
+						scale++;
+				}
+			} else {
+				return parseDouble(duration, end);
+			}
+		}
+		if (end == 0 || (scale == 0 && end == 1))
+			return UNKNOWN;
+		for (int s = Math.max(scale, 0); s < 3; s++)
+			millis *= 10;
+		return millis;
+	}
+
+	/**
+	 * Slow path for signs, exponents and very long integer parts.
+	 */
+	private static long parseDouble(String duration, int end) {
+		try {
+			double seconds = Double.parseDouble(duration.substring(0, end));
+			return seconds < 0 ? UNKNOWN : (long) (seconds * 1000);
+		} catch (NumberFormatException e) {
+			return UNKNOWN;
+		}
+	}
+
+	private static boolean hasOffset(String time) {
+		int t = time.indexOf('T');
+		for (int i = time.length() - 1; i > t; i--) {
+			char c = time.charAt(i);
+			if (c == 'Z' || c == 'z' || c == '+' || c == '-')
+				return true;
+		}
+		return false;
+	}
+}
@@ -0,0 +1,39 @@
+package spark.jobserver.client;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket rate limiter refilled at a fixed rate up to a burst size.
+ */
+class TokenBucket {
+	private final double tokensPerNano;
+	private final double capacity;
+	private double tokens;
+	private long refilledAt = System.nanoTime();
+
+	/**
+	 * @param permitsPerSecond sustained rate
+	 * @param burst max permits available at once
+	 */
+	TokenBucket(double permitsPerSecond, int burst) {
+		this.tokensPerNano = permitsPerSecond / TimeUnit.SECONDS.toNanos(1);
+		this.capacity = Math.max(1, burst);
+		this.tokens = capacity;
+	}
+
+	/**
+	 * Takes a permit if one is available.
+	 * 
+	 * @return 0 if a permit was taken, or the nanos until one is available
+	 */
+	synchronized long tryAcquire() {
+		long now = System.nanoTime();
+		tokens = Math.min(capacity, tokens + (now - refilledAt) * tokensPerNano);
+		refilledAt = now;
+		if (tokens >= 1) {
+			tokens -= 1;
+			return 0;
+		}
+		return (long) Math.ceil((1 - tokens) / tokensPerNano);
+	}
+}
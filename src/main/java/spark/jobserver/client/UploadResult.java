@@ -0,0 +1,28 @@
+package spark.jobserver.client;
+
+import java.util.Date;
+
+import lombok.*;
+import util.Pojo;
+
+/**
+ * Outcome of {@link JobServerClient#uploadJobJarIfChanged(java.io.File, String)}.
+ */
+@Getter
+@AllArgsConstructor(access = AccessLevel.PACKAGE)
+public class UploadResult extends Pojo {
+	private String appName;
+	private String sha256;
+	/**
+	 * true if the server already had this binary and nothing was sent.
+	 */
+	private boolean skipped;
+	/**
+	 * Response of the upload, or null if skipped.
+	 */
+	private String response;
+	/**
+	 * Upload time of the binary on the server, may be null if unknown.
+	 */
+	private Date uploadTime;
+}
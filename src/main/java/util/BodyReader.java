@@ -0,0 +1,18 @@
+package util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Reads a successful response body while it is received, instead of having
+ * {@link Http} buffer it into a String first.
+ */
+@FunctionalInterface
+public interface BodyReader<T> {
+	/**
+	 * @param body the decoded body, closed by the caller once this method returns
+	 * @param charset charset of the body, UTF-8 if the server did not tell
+	 */
+	T read(InputStream body, Charset charset) throws IOException;
+}
@@ -0,0 +1,71 @@
+package util;
+
+/**
+ * Consecutive-failure circuit breaker of one job server.
+ * 
+ * <p>
+ * After <code>failureThreshold</code> failures in a row the circuit opens and
+ * requests fail fast for <code>openMillis</code>. Then a single trial request is
+ * let through: its success closes the circuit, its failure opens it again.
+ */
+public class CircuitBreaker {
+	public enum State {
+		CLOSED, OPEN, HALF_OPEN
+	}
+
+	private final int failureThreshold;
+	private final long openMillis;
+	private State state = State.CLOSED;
+	private int failures;
+	private long openedAt;
+
+	/**
+	 * @param failureThreshold consecutive failures opening the circuit, or a
+	 *        non-positive value to never open it
+	 * @param openMillis how long the circuit stays open before a trial request
+	 */
+	public CircuitBreaker(int failureThreshold, long openMillis) {
+		this.failureThreshold = failureThreshold;
+		this.openMillis = openMillis;
+	}
+
+	/**
+	 * @return true if a request may be sent now
+	 */
+	public synchronized boolean allowRequest() {
+		if (state == State.CLOSED)
+			return true;
+		if (state == State.OPEN && System.currentTimeMillis() - openedAt >= openMillis) {
+			state = State.HALF_OPEN;
+			return true;
+		}
+		return false;
+	}
+
+	public synchronized void onSuccess() {
+		failures = 0;
+		state = State.CLOSED;
+	}
+
+	public synchronized void onFailure() {
+		if (failureThreshold <= 0)
+			return;
+		if (state == State.HALF_OPEN || ++failures >= failureThreshold) {
+			state = State.OPEN;
+			openedAt = System.currentTimeMillis();
+		}
+	}
+
+	/**
+	 * Called when a request let through ends without outcome. The trial of a
+	 * half-open circuit goes to the next request instead of staying pending.
+	 */
+	public synchronized void onAbandoned() {
+		if (state == State.HALF_OPEN)
+			state = State.OPEN;
+	}
+
+	public synchronized State getState() {
+		return state;
+	}
+}
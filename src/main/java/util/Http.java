@@ -1,72 +1,663 @@
 package util;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
-import org.apache.commons.io.IOUtils;
-
 import java.io.File;
-import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
 
-import lombok.extern.log4j.Log4j;
+import lombok.Builder;
+import lombok.extern.slf4j.Slf4j;
 import okhttp3.*;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.BufferedSource;
+import okio.ForwardingSource;
+import okio.GzipSink;
+import okio.GzipSource;
+import okio.Okio;
+import spark.jobserver.client.JobServerClientException;
+
+/**
+ * Http transport of a <code>JobServerClient</code>. Each instance owns its own
+ * connection pool and dispatcher, so clients talking to different job servers
+ * do not compete for the same connections.
+ */
+@Slf4j
+public class Http implements Transport {
+	public static final int DEFAULT_MAX_IDLE_CONNECTIONS = 5;
+	public static final long DEFAULT_KEEP_ALIVE_MILLIS = TimeUnit.MINUTES.toMillis(5);
+	public static final int DEFAULT_MAX_REQUESTS = 64;
+	public static final int DEFAULT_MAX_REQUESTS_PER_HOST = 5;
+	public static final long DEFAULT_CONNECT_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(60);
+	public static final long DEFAULT_READ_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(60);
+	public static final long DEFAULT_WRITE_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(600);
+
+	private static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
+	private static final MediaType JAR = MediaType.parse("application/java-archive");
+	private static final MediaType BINARY = MediaType.parse("application/octet-stream");
+
+	public static final int DEFAULT_MAX_RETRIES = 2;
+	public static final long DEFAULT_RETRY_BACKOFF_MILLIS = 200;
+	public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+	public static final long DEFAULT_OPEN_MILLIS = TimeUnit.SECONDS.toMillis(10);
+
+	/**
+	 * Code of the <code>JobServerClientException</code> thrown while the circuit is open.
+	 */
+	public static final int CIRCUIT_OPEN = 0;
+
+	private static final int MAX_ERROR_BODY = 512;
+	private static final int UNSUPPORTED_MEDIA_TYPE = 415;
 
-@Log4j
-public class Http {
-	private static OkHttpClient client = new OkHttpClient.Builder().connectTimeout(60, TimeUnit.SECONDS)
-			.writeTimeout(600, TimeUnit.SECONDS).readTimeout(60, TimeUnit.SECONDS).build();
+	private final OkHttpClient client;
+	private final RetryPolicy retry;
+	private final ScheduledExecutorService scheduler;
+	private final Metrics metrics;
+	private final RequestLog requestLog;
+	private final int compressRequestsOverBytes;
+	private volatile boolean serverAcceptsGzip = true;
 
-	public static String get(String url) throws IOException {
-		log.info("GET " + url);
-		Request request = new Request.Builder().url(url).get().build();
-		return processRequest(request);
+	/**
+	 * Reads a successful response of a synchronous call.
+	 */
+	private interface Handler<T> {
+		T handle(Request request, Response response, long start) throws IOException;
+	}
+
+	/**
+	 * Creates a transport with default settings.
+	 */
+	public Http() {
+		this(0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, null, null, 0, 0);
+	}
+
+	/**
+	 * Creates a transport with its own connection pool. Any zero value falls
+	 * back to the corresponding <code>DEFAULT_*</code> constant.
+	 * 
+	 * @param maxIdleConnections max idle connections kept in the pool
+	 * @param keepAliveMillis how long an idle connection is kept in the pool
+	 * @param maxRequests max concurrent requests over all hosts
+	 * @param maxRequestsPerHost max concurrent requests per job server
+	 * @param connectTimeoutMillis connect timeout
+	 * @param readTimeoutMillis read timeout
+	 * @param writeTimeoutMillis write timeout
+	 * @param maxRetries retries of a failed GET, negative to disable retries
+	 * @param retryBackoffMillis base delay before the first retry, doubled on each retry
+	 * @param deadlineMillis overall time budget of a GET including retries; no
+	 *        retry is started past it. Zero means no budget
+	 * @param failureThreshold consecutive failures opening the circuit breaker,
+	 *        negative to disable it
+	 * @param openMillis how long the circuit stays open
+	 * @param scheduler scheduler of the retries of asynchronous calls, or null
+	 *        to not retry them
+	 * @param metrics receives the timings of the requests, or null
+	 * @param logSampleRate fraction of successful requests written to the
+	 *        request log at DEBUG, 0 for all of them and negative to log only
+	 *        failed ones
+	 * @param compressRequestsOverBytes JSON bodies of at least this many
+	 *        characters are sent gzip-compressed, 0 to never compress them. A
+	 *        server answering 415 gets them uncompressed from then on
+	 */
+	@Builder
+	private Http(int maxIdleConnections, long keepAliveMillis, int maxRequests, int maxRequestsPerHost,
+			long connectTimeoutMillis, long readTimeoutMillis, long writeTimeoutMillis, int maxRetries,
+			long retryBackoffMillis, long deadlineMillis, int failureThreshold, long openMillis,
+			ScheduledExecutorService scheduler, Metrics metrics, double logSampleRate, int compressRequestsOverBytes) {
+		Dispatcher dispatcher = new Dispatcher();
+		dispatcher.setMaxRequests(orDefault(maxRequests, DEFAULT_MAX_REQUESTS));
+		dispatcher.setMaxRequestsPerHost(orDefault(maxRequestsPerHost, DEFAULT_MAX_REQUESTS_PER_HOST));
+		ConnectionPool pool = new ConnectionPool(orDefault(maxIdleConnections, DEFAULT_MAX_IDLE_CONNECTIONS),
+				orDefault(keepAliveMillis, DEFAULT_KEEP_ALIVE_MILLIS), TimeUnit.MILLISECONDS);
+		this.client = new OkHttpClient.Builder().dispatcher(dispatcher).connectionPool(pool)
+				.connectTimeout(orDefault(connectTimeoutMillis, DEFAULT_CONNECT_TIMEOUT_MILLIS), TimeUnit.MILLISECONDS)
+				.writeTimeout(orDefault(writeTimeoutMillis, DEFAULT_WRITE_TIMEOUT_MILLIS), TimeUnit.MILLISECONDS)
+				.readTimeout(orDefault(readTimeoutMillis, DEFAULT_READ_TIMEOUT_MILLIS), TimeUnit.MILLISECONDS).build();
+		this.scheduler = scheduler;
+		this.metrics = metrics != null ? metrics : Metrics.NONE;
+		this.retry = RetryPolicy.builder().maxRetries(maxRetries).retryBackoffMillis(retryBackoffMillis)
+				.deadlineMillis(deadlineMillis).failureThreshold(failureThreshold).openMillis(openMillis)
+				.metrics(this.metrics).build();
+		this.requestLog = new RequestLog(logSampleRate == 0 ? 1 : Math.max(logSampleRate, 0));
+		this.compressRequestsOverBytes = compressRequestsOverBytes;
+		this.metrics.bindConnectionPool(pool::idleConnectionCount,
+				() -> pool.connectionCount() - pool.idleConnectionCount());
+	}
+
+	public String get(HttpUrl url) throws IOException {
+		return processRequest(newGet(url));
+	}
+
+	/**
+	 * Executes a GET and reads the response with the given reader while it is
+	 * received. The GET is retried as usual.
+	 */
+	public <T> T get(HttpUrl url, BodyReader<T> reader) throws IOException {
+		return execute(newGet(url), reading(reader));
 	}
 	
-	public static String postJson(String url, String json) throws IOException {
-		return post("json", url, json);
+	/**
+	 * Posts the JSON, gzip-compressed if it is large and the server accepts it.
+	 */
+	public String postJson(HttpUrl url, String json) throws IOException {
+		return postCompressible(url, RequestBody.create(JSON, json), json.length(), this::readBody);
 	}
 
-	public static String postJar(String url, byte[] data) throws IOException {
-		return post("jar", url, data);
+	/**
+	 * Posts the JSON like {@link #postJson(HttpUrl, String)} and reads the
+	 * response with the given reader.
+	 */
+	public <T> T postJson(HttpUrl url, String json, BodyReader<T> reader) throws IOException {
+		return postCompressible(url, RequestBody.create(JSON, json), json.length(), reading(reader));
 	}
 
-	public static String postFile(String url, File file) throws IOException {
-		return post("binary", url, IOUtils.toByteArray(new FileInputStream(file)));
+	/**
+	 * Posts the UTF-8 content of the file, streamed from disk with its length
+	 * known upfront, or gzip-compressed like {@link #postJson(HttpUrl, String)}.
+	 */
+	public String postJson(HttpUrl url, File json) throws IOException {
+		return postCompressible(url, StreamingBody.of(JSON, json, null), json.length(), this::readBody);
 	}
 
-	public static String delete(String url) throws IOException {
-		log.info("DELETE " + url);
-		Request request = new Request.Builder().url(url).delete().build();
-		return processRequest(request);
+	/**
+	 * Posts the UTF-8 content of the stream, sent chunked as it is read. The
+	 * stream is not closed.
+	 */
+	public String postJson(HttpUrl url, InputStream json) throws IOException {
+		return processRequest(newPost(url, StreamingBody.of(JSON, json, -1, null)));
 	}
 
-	private static String post(String type, String url, Object data) throws IOException {
-		log.info("POST " + url);
+	public String postJar(HttpUrl url, File jar, ProgressListener listener) throws IOException {
+		return processRequest(newPost(url, StreamingBody.of(JAR, jar, listener)));
+	}
 
-		RequestBody body = null;
-		switch (type) {
-		case "json":
-			body = RequestBody.create(MediaType.parse("application/json; charset=utf-8"), (String) data);
-			break;
-		case "jar":
-			body = RequestBody.create(MediaType.parse("application/java-archive"), (byte[]) data);
-			break;
-		case "binary":
-			body = RequestBody.create(MediaType.parse("application/octet-stream"), (byte[]) data);
-			break;
-		default:
-			// other
+	/**
+	 * @param length length of the stream, or -1 if unknown
+	 */
+	public String postJar(HttpUrl url, InputStream jar, long length, ProgressListener listener) throws IOException {
+		return processRequest(newPost(url, StreamingBody.of(JAR, jar, length, listener)));
+	}
+
+	public String postFile(HttpUrl url, File file) throws IOException {
+		return processRequest(newPost(url, StreamingBody.of(BINARY, file, null)));
+	}
+
+	public String delete(HttpUrl url) throws IOException {
+		return processRequest(newDelete(url));
+	}
+
+	/**
+	 * Executes a GET and returns its body as a character stream instead of a
+	 * String. Closing the reader releases the connection.
+	 */
+	public Reader openReader(HttpUrl url) throws IOException {
+		return execute(newGet(url), (request, response, start) -> {
+			record(request, response.code(), start, response.body().contentLength(), null);
+			return new InputStreamReader(decode(response, response.body().source()).inputStream(),
+					charset(response));
+		});
+	}
+
+	public CompletableFuture<String> getAsync(HttpUrl url) {
+		return processRequestAsync(newGet(url));
+	}
+
+	/**
+	 * Asynchronous version of {@link #postJson(HttpUrl, String)}.
+	 */
+	public CompletableFuture<String> postJsonAsync(HttpUrl url, String json) {
+		return postCompressibleAsync(url, RequestBody.create(JSON, json), json.length());
+	}
+
+	/**
+	 * Asynchronous version of {@link #postJson(HttpUrl, File)}.
+	 */
+	public CompletableFuture<String> postJsonAsync(HttpUrl url, File json) {
+		return postCompressibleAsync(url, StreamingBody.of(JSON, json, null), json.length());
+	}
+
+	/**
+	 * Asynchronous version of {@link #postJson(HttpUrl, InputStream)}. The
+	 * stream is read on a dispatcher thread while the request is sent.
+	 */
+	public CompletableFuture<String> postJsonAsync(HttpUrl url, InputStream json) {
+		return processRequestAsync(newPost(url, StreamingBody.of(JSON, json, -1, null)));
+	}
+
+	private <T> T postCompressible(HttpUrl url, RequestBody body, long length, Handler<T> handler)
+			throws IOException {
+		if (compress(length)) {
+			try {
+				return execute(newGzipPost(url, body), handler);
+			} catch (JobServerClientException e) {
+				if (e.getCode() != UNSUPPORTED_MEDIA_TYPE)
+					throw e;
+				gzipRejected(url);
+			}
 		}
+		return execute(newPost(url, body), handler);
+	}
+
+	private CompletableFuture<String> postCompressibleAsync(HttpUrl url, RequestBody body, long length) {
+		if (!compress(length))
+			return processRequestAsync(newPost(url, body));
+		CompletableFuture<String> result = new CompletableFuture<>();
+		CompletableFuture<String> compressed = processRequestAsync(newGzipPost(url, body));
+		compressed.whenComplete((response, e) -> {
+			if (e == null) {
+				result.complete(response);
+			} else if (e instanceof JobServerClientException
+					&& ((JobServerClientException) e).getCode() == UNSUPPORTED_MEDIA_TYPE) {
+				gzipRejected(url);
+				CompletableFuture<String> plain = processRequestAsync(newPost(url, body));
+				plain.whenComplete((b, pe) -> {
+					if (pe == null)
+						result.complete(b);
+					else
+						result.completeExceptionally(pe);
+				});
+				result.whenComplete((r, re) -> {
+					if (result.isCancelled())
+						plain.cancel(true);
+				});
+			} else {
+				result.completeExceptionally(e);
+			}
+		});
+		result.whenComplete((r, e) -> {
+			if (result.isCancelled())
+				compressed.cancel(true);
+		});
+		return result;
+	}
+
+	public CompletableFuture<String> postJarAsync(HttpUrl url, File jar, ProgressListener listener) {
+		return processRequestAsync(newPost(url, StreamingBody.of(JAR, jar, listener)));
+	}
+
+	/**
+	 * The stream is read on a dispatcher thread while the request is sent.
+	 */
+	public CompletableFuture<String> postJarAsync(HttpUrl url, InputStream jar, long length,
+			ProgressListener listener) {
+		return processRequestAsync(newPost(url, StreamingBody.of(JAR, jar, length, listener)));
+	}
+
+	public CompletableFuture<String> deleteAsync(HttpUrl url) {
+		return processRequestAsync(newDelete(url));
+	}
+
+	/**
+	 * Max concurrent requests to one job server.
+	 */
+	public int maxRequestsPerHost() {
+		return client.dispatcher().getMaxRequestsPerHost();
+	}
+
+	public CircuitBreaker.State circuitState() {
+		return retry.circuitState();
+	}
+
+	/**
+	 * Number of idle connections currently kept in the pool.
+	 */
+	public int idleConnectionCount() {
+		return client.connectionPool().idleConnectionCount();
+	}
+
+	/**
+	 * Total number of open connections in the pool.
+	 */
+	public int connectionCount() {
+		return client.connectionPool().connectionCount();
+	}
+
+	/**
+	 * Cancels queued calls, stops the dispatcher and drains the connection pool.
+	 */
+	@Override
+	public void close() {
+		client.dispatcher().cancelAll();
+		client.dispatcher().executorService().shutdown();
+		client.connectionPool().evictAll();
+	}
+
+	/**
+	 * Setting Accept-Encoding turns off the transparent decoding of OkHttp, so
+	 * that responses are counted as sent and decoded by {@link #decode(Response, BufferedSource)}.
+	 */
+	private static Request.Builder newRequest(HttpUrl url) {
+		return new Request.Builder().url(url).header("Accept-Encoding", "gzip");
+	}
+
+	private Request newGet(HttpUrl url) {
+		return newRequest(url).get().build();
+	}
+
+	private Request newDelete(HttpUrl url) {
+		return newRequest(url).delete().build();
+	}
+
+	private Request newPost(HttpUrl url, RequestBody body) {
+		return newRequest(url).post(body).build();
+	}
+
+	/**
+	 * The body is compressed while it is written, so its length is unknown and
+	 * it is sent chunked.
+	 */
+	private Request newGzipPost(HttpUrl url, RequestBody body) {
+		RequestBody compressed = new RequestBody() {
+			@Override
+			public MediaType contentType() {
+				return body.contentType();
+			}
+
+			@Override
+			public void writeTo(BufferedSink sink) throws IOException {
+				BufferedSink gzip = Okio.buffer(new GzipSink(sink));
+				body.writeTo(gzip);
+				gzip.close();
+			}
+		};
+		return newRequest(url).header("Content-Encoding", "gzip").post(compressed).build();
+	}
+
+	private boolean compress(long length) {
+		return compressRequestsOverBytes > 0 && serverAcceptsGzip && length >= compressRequestsOverBytes;
+	}
+
+	private void gzipRejected(HttpUrl url) {
+		serverAcceptsGzip = false;
+		log.warn("{} does not accept gzip request bodies, sending them uncompressed", url.host());
+	}
 
-		Request request = new Request.Builder().url(url).post(body).build();
-		return processRequest(request);
+	private String processRequest(Request request) throws IOException {
+		return execute(request, this::readBody);
 	}
 
-	private static String processRequest(Request request) throws IOException {
-		try (Response response = client.newCall(request).execute()) {
-			String result = response.body().string();
-			log.debug(result);
+	/**
+	 * Reads and closes the response, recording the exchange once the body is read.
+	 */
+	private String readBody(Request request, Response response, long start) throws IOException {
+		try (Response r = response) {
+			Buffer raw = new Buffer();
+			long bytes = r.body().source().readAll(raw);
+			String result = decode(r, raw).readString(charset(r));
+			record(request, r.code(), start, bytes, result);
 			return result;
 		}
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Executes the request with the retries of the {@link RetryPolicy}.
+	 * 
+	 * @return the successful response read by the handler
+	 */
+	private <T> T execute(Request request, Handler<T> handler) throws IOException {
+		return retry.execute(request.method(), request.url(), () -> attempt(request, handler));
+	}
+
+	/**
+	 * Sends the request once through the circuit breaker.
+	 * 
+	 * @throws JobServerClientException on a non-2xx response or when the circuit is open
+	 */
+	private <T> T attempt(Request request, Handler<T> handler) throws IOException {
+		retry.allow(request.method(), request.url());
+		long start = System.nanoTime();
+		Response response;
+		try {
+			response = retry.send(() -> client.newCall(request).execute(), Response::code);
+		} catch (InterruptedException e) {
+			record(request, Metrics.NO_RESPONSE, start, 0, null);
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while sending " + request.url());
+		} catch (IOException | RuntimeException e) {
+			record(request, Metrics.NO_RESPONSE, start, 0, null);
+			throw e;
+		}
+		return handler.handle(request, checkStatus(request, response, start), start);
+	}
+
+	/**
+	 * Enqueues the request on the dispatcher instead of blocking the caller.
+	 * The returned future completes on an OkHttp dispatcher thread; cancelling
+	 * it cancels the underlying call.
+	 */
+	private CompletableFuture<String> processRequestAsync(Request request) {
+		CompletableFuture<String> future = new CompletableFuture<>();
+		attemptAsync(request, 0, retry.deadline(), future);
+		return future;
+	}
+
+	private void attemptAsync(Request request, int attempt, long deadline, CompletableFuture<String> future) {
+		if (future.isDone())
+			return;
+		try {
+			retry.allow(request.method(), request.url());
+		} catch (JobServerClientException e) {
+			future.completeExceptionally(e);
+			return;
+		}
+		long start = System.nanoTime();
+		Call call = client.newCall(request);
+		Callback callback = new Callback() {
+			@Override
+			public void onFailure(Call call, IOException e) {
+				if (call.isCanceled())
+					retry.onAbandoned();
+				else
+					retry.onFailure(e);
+				record(request, Metrics.NO_RESPONSE, start, 0, null);
+				retryAsync(e);
+			}
+
+			@Override
+			public void onResponse(Call call, Response response) {
+				retry.onResponse(response.code());
+				try {
+					future.complete(readBody(request, checkStatus(request, response, start), start));
+				} catch (IOException e) {
+					retryAsync(e);
+				} catch (RuntimeException e) {
+					future.completeExceptionally(e);
+				}
+			}
+
+			private void retryAsync(IOException e) {
+				long delay = scheduler == null ? -1 : retry.retryDelay(request.method(), e, attempt, deadline);
+				if (delay < 0) {
+					future.completeExceptionally(e);
+					return;
+				}
+				retry.retrying(request.method(), request.url(), delay, e);
+				try {
+					scheduler.schedule(() -> attemptAsync(request, attempt + 1, deadline, future), delay,
+							TimeUnit.MILLISECONDS);
+				} catch (RejectedExecutionException re) {
+					future.completeExceptionally(e);
+				}
+			}
+		};
+		try {
+			call.enqueue(callback);
+		} catch (RuntimeException e) {
+			retry.onAbandoned();
+			future.completeExceptionally(e);
+			return;
+		}
+		future.whenComplete((r, e) -> {
+			if (future.isCancelled())
+				call.cancel();
+		});
+	}
+
+	/**
+	 * Turns a non-2xx response into a <code>JobServerClientException</code>
+	 * and records a 5xx response in the circuit breaker once its body is read.
+	 */
+	private Response checkStatus(Request request, Response response, long start) throws IOException {
+		if (response.isSuccessful())
+			return response;
+		int code = response.code();
+		String body = null;
+		try (Response r = response) {
+			Buffer raw = new Buffer();
+			long bytes = r.body().source().readAll(raw);
+			body = decode(r, raw).readString(charset(r));
+			record(request, code, start, bytes, body);
+		} finally {
+			if (code >= 500)
+				retry.onServerError(body);
+		}
+		String text = body.length() > MAX_ERROR_BODY ? body.substring(0, MAX_ERROR_BODY) + "..." : body;
+		throw new JobServerClientException(code,
+				request.method() + " " + request.url() + " returned " + code + ": " + text, body);
+	}
+
+	/**
+	 * @return true if the body is a job in <code>ERROR</code> status, which the
+	 *         job server answers with 500 when a synchronous job fails
+	 */
+	public static boolean isJobError(String body) {
+		if (body == null || !body.contains("ERROR"))
+			return false;
+		try {
+			JsonElement json = new JsonParser().parse(body);
+			if (!json.isJsonObject())
+				return false;
+			JsonElement status = json.getAsJsonObject().get("status");
+			return status != null && status.isJsonPrimitive() && "ERROR".equals(status.getAsString());
+		} catch (JsonParseException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Hands the decoded body to the reader, recording the exchange with the
+	 * bytes received once it is read.
+	 */
+	private <T> Handler<T> reading(BodyReader<T> reader) {
+		return (request, response, start) -> {
+			try (Response r = response) {
+				long[] received = new long[1];
+				BufferedSource counted = Okio.buffer(new ForwardingSource(r.body().source()) {
+					@Override
+					public long read(Buffer sink, long byteCount) throws IOException {
+						long read = super.read(sink, byteCount);
+						if (read > 0)
+							received[0] += read;
+						return read;
+					}
+				});
+				T value = reader.read(decode(r, counted).inputStream(), charset(r));
+				record(request, r.code(), start, received[0], null);
+				return value;
+			}
+		};
+	}
+
+	/**
+	 * Decodes a gzip-encoded body. The bytes move through okio's pooled
+	 * segments, no array is allocated per response.
+	 */
+	private static BufferedSource decode(Response response, BufferedSource body) {
+		return "gzip".equalsIgnoreCase(response.header("Content-Encoding")) ? Okio.buffer(new GzipSource(body))
+				: body;
+	}
+
+	private static Charset charset(Response response) {
+		MediaType type = response.body().contentType();
+		return type == null ? StandardCharsets.UTF_8 : type.charset(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Reports a finished attempt to the metrics and the request log.
+	 */
+	private void record(Request request, int status, long start, long responseBytes, String body) {
+		boolean logged = requestLog.isLogged(status);
+		if (metrics == Metrics.NONE && !logged)
+			return;
+		long nanos = System.nanoTime() - start;
+		long requestBytes = 0;
+		if (request.body() != null) {
+			try {
+				requestBytes = Math.max(request.body().contentLength(), 0);
+			} catch (IOException e) {
+				// unknown
+			}
+		}
+		responseBytes = Math.max(responseBytes, 0);
+		if (metrics != Metrics.NONE) {
+			String endpoint = endpoint(request.url());
+			metrics.recordRequest(operation(request.method(), endpoint), endpoint, status, nanos, requestBytes,
+					responseBytes);
+		}
+		if (logged)
+			requestLog.log(request, status, nanos, requestBytes, responseBytes, body);
+	}
+
+	/**
+	 * @return the path with its names and ids replaced, such as <code>/jobs/{id}/config</code>
+	 */
+	public static String endpoint(HttpUrl url) {
+		StringBuilder endpoint = new StringBuilder();
+		for (int i = 0; i < url.pathSize(); i++)
+			endpoint.append('/').append(i == 1 ? "{id}" : url.pathSegments().get(i));
+		return endpoint.toString();
+	}
+
+	/**
+	 * @return the name of the client method sending the request
+	 */
+	public static String operation(String method, String endpoint) {
+		switch (method + " " + endpoint) {
+		case "GET /contexts":
+			return "getContexts";
+		case "POST /contexts/{id}":
+			return "createContext";
+		case "DELETE /contexts/{id}":
+			return "deleteContext";
+		case "GET /jobs":
+			return "getJobs";
+		case "POST /jobs":
+			return "startJob";
+		case "GET /jobs/{id}":
+			return "getJobResult";
+		case "DELETE /jobs/{id}":
+			return "killJob";
+		case "GET /jobs/{id}/config":
+			return "getConfig";
+		case "GET /binaries":
+			return "getBinaries";
+		case "POST /binaries/{id}":
+			return "uploadJobJar";
+		case "DELETE /binaries/{id}":
+			return "deleteBinary";
+		default:
+			return method + " " + endpoint;
+		}
+	}
+
+	private static int orDefault(int value, int defaultValue) {
+		return value > 0 ? value : defaultValue;
+	}
+
+	private static long orDefault(long value, long defaultValue) {
+		return value > 0 ? value : defaultValue;
+	}
+}
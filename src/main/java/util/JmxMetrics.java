@@ -0,0 +1,168 @@
+package util;
+
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * {@link Metrics} registered as the MXBean
+ * <code>spark.jobserver.client:type=Metrics,name=&lt;name&gt;</code> of the
+ * platform MBean server. Requests are aggregated per operation and status, such
+ * as <code>getJobResult 200</code>.
+ */
+@Slf4j
+public class JmxMetrics implements Metrics, JmxMetricsMXBean, Closeable {
+	/**
+	 * Requests of one operation and status.
+	 */
+	public static class RequestStats {
+		private final LongAdder count = new LongAdder();
+		private final LongAdder nanos = new LongAdder();
+		private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+		private final String endpoint;
+
+		RequestStats(String endpoint) {
+			this.endpoint = endpoint;
+		}
+
+		public String getEndpoint() {
+			return endpoint;
+		}
+
+		public long getCount() {
+			return count.sum();
+		}
+
+		public double getMeanMillis() {
+			long n = count.sum();
+			return n == 0 ? 0 : nanos.sum() / (n * 1e6);
+		}
+
+		public double getMaxMillis() {
+			return maxNanos.get() / 1e6;
+		}
+
+		void record(long nanos) {
+			count.increment();
+			this.nanos.add(nanos);
+			maxNanos.accumulate(nanos);
+		}
+	}
+
+	private final ObjectName objectName;
+	private final ConcurrentMap<String, RequestStats> requests = new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, LongAdder> retries = new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, LongAdder[]> parses = new ConcurrentHashMap<>();
+	private final LongAdder requestBytes = new LongAdder();
+	private final LongAdder responseBytes = new LongAdder();
+	private volatile IntSupplier idle = () -> 0;
+	private volatile IntSupplier active = () -> 0;
+
+	/**
+	 * Registers the MXBean.
+	 * 
+	 * @param name name of the client, unique within the JVM
+	 * @throws IllegalArgumentException the name is invalid or already registered
+	 */
+	public JmxMetrics(String name) {
+		try {
+			objectName = new ObjectName("spark.jobserver.client:type=Metrics,name=" + ObjectName.quote(name));
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+		} catch (JMException e) {
+			throw new IllegalArgumentException("Cannot register metrics " + name, e);
+		}
+	}
+
+	@Override
+	public void recordRequest(String operation, String endpoint, int status, long nanos, long requestBytes,
+			long responseBytes) {
+		requests.computeIfAbsent(operation + " " + status, k -> new RequestStats(endpoint)).record(nanos);
+		this.requestBytes.add(requestBytes);
+		this.responseBytes.add(responseBytes);
+	}
+
+	@Override
+	public void recordRetry(String operation, String endpoint) {
+		retries.computeIfAbsent(operation, k -> new LongAdder()).increment();
+	}
+
+	@Override
+	public void recordParse(String operation, long nanos) {
+		LongAdder[] stats = parses.computeIfAbsent(operation, k -> new LongAdder[] { new LongAdder(), new LongAdder() });
+		stats[0].increment();
+		stats[1].add(nanos);
+	}
+
+	@Override
+	public void bindConnectionPool(IntSupplier idle, IntSupplier active) {
+		this.idle = idle;
+		this.active = active;
+	}
+
+	@Override
+	public Map<String, RequestStats> getRequests() {
+		return new TreeMap<>(requests);
+	}
+
+	@Override
+	public Map<String, Long> getRetries() {
+		Map<String, Long> counts = new TreeMap<>();
+		retries.forEach((operation, count) -> counts.put(operation, count.sum()));
+		return counts;
+	}
+
+	@Override
+	public Map<String, Double> getMeanParseMillis() {
+		Map<String, Double> means = new TreeMap<>();
+		parses.forEach((operation, stats) -> means.put(operation,
+				stats[1].sum() / (stats[0].sum() * (double) TimeUnit.MILLISECONDS.toNanos(1))));
+		return means;
+	}
+
+	@Override
+	public long getRequestBytes() {
+		return requestBytes.sum();
+	}
+
+	@Override
+	public long getResponseBytes() {
+		return responseBytes.sum();
+	}
+
+	@Override
+	public int getIdleConnections() {
+		return idle.getAsInt();
+	}
+
+	@Override
+	public int getActiveConnections() {
+		return active.getAsInt();
+	}
+
+	/**
+	 * Unregisters the MXBean.
+	 */
+	@Override
+	public void close() {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			if (server.isRegistered(objectName))
+				server.unregisterMBean(objectName);
+		} catch (JMException e) {
+			log.warn("Cannot unregister {}", objectName, e);
+		}
+	}
+}
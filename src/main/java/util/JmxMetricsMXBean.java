@@ -0,0 +1,31 @@
+package util;
+
+import java.util.Map;
+
+/**
+ * Management interface of {@link JmxMetrics}.
+ */
+public interface JmxMetricsMXBean {
+	/**
+	 * @return requests keyed by operation and status, such as <code>getJobResult 200</code>
+	 */
+	Map<String, JmxMetrics.RequestStats> getRequests();
+
+	/**
+	 * @return retries per operation
+	 */
+	Map<String, Long> getRetries();
+
+	/**
+	 * @return mean time binding responses per operation
+	 */
+	Map<String, Double> getMeanParseMillis();
+
+	long getRequestBytes();
+
+	long getResponseBytes();
+
+	int getIdleConnections();
+
+	int getActiveConnections();
+}
@@ -0,0 +1,93 @@
+package util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Type;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.MalformedJsonException;
+
+/**
+ * Iterates over the elements of a JSON array read from a stream, binding one
+ * element at a time so that memory stays bounded by the largest element.
+ * 
+ * <p>
+ * The iterator closes the underlying reader once the end of the array is
+ * reached; close it explicitly when stopping early. I/O errors while iterating,
+ * including malformed elements, are thrown as <code>UncheckedIOException</code>.
+ */
+public class JsonArrayIterator<T> implements Iterator<T>, Closeable {
+	private final JsonReader reader;
+	private final Type type;
+	private final boolean closeReader;
+	private boolean closed;
+
+	/**
+	 * @param reader reader positioned after the opening bracket of the array
+	 * @param type type of the elements
+	 */
+	public JsonArrayIterator(JsonReader reader, Type type) {
+		this(reader, type, true);
+	}
+
+	/**
+	 * @param reader reader positioned after the opening bracket of the array
+	 * @param type type of the elements
+	 * @param closeReader false when the array is nested in a document the caller
+	 *        keeps reading after the array
+	 */
+	public JsonArrayIterator(JsonReader reader, Type type, boolean closeReader) {
+		this.reader = reader;
+		this.type = type;
+		this.closeReader = closeReader;
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (closed)
+			return false;
+		try {
+			if (reader.hasNext())
+				return true;
+			reader.endArray();
+			close();
+			return false;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	public T next() {
+		if (!hasNext())
+			throw new NoSuchElementException();
+		try {
+			return Pojo.gson.fromJson(reader, type);
+		} catch (JsonParseException e) {
+			throw new UncheckedIOException(malformed(e));
+		}
+	}
+
+	/**
+	 * A truncated or malformed stream is reported by Gson as an IOException or
+	 * as a JsonParseException depending on where it breaks. Streaming readers
+	 * turn the latter into the former so that they fail the same either way.
+	 */
+	public static IOException malformed(JsonParseException e) {
+		return e.getCause() instanceof IOException ? (IOException) e.getCause()
+				: new MalformedJsonException(e.getMessage(), e);
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (!closed) {
+			closed = true;
+			if (closeReader)
+				reader.close();
+		}
+	}
+}
@@ -0,0 +1,63 @@
+package util;
+
+import java.util.function.IntSupplier;
+
+/**
+ * Receives measurements of the calls made by a <code>JobServerClient</code>.
+ * All methods default to doing nothing, implementations override the ones
+ * they need and must be thread-safe.
+ * 
+ * <p>
+ * Operations are named after the client methods, such as
+ * <code>getJobResult</code>, and endpoints are path templates such as
+ * <code>/jobs/{id}</code>.
+ * 
+ * @see JmxMetrics
+ * @see MicrometerMetrics
+ */
+public interface Metrics {
+	/**
+	 * Status recorded when no response was received.
+	 */
+	int NO_RESPONSE = -1;
+
+	Metrics NONE = new Metrics() {
+	};
+
+	/**
+	 * Called after each http attempt, retries included.
+	 * 
+	 * @param operation client operation
+	 * @param endpoint path template of the request
+	 * @param status http status, or {@link #NO_RESPONSE}
+	 * @param nanos network time from sending the request to reading the response body
+	 * @param requestBytes bytes of the request body, 0 if unknown
+	 * @param responseBytes bytes of the response body, 0 if unknown
+	 */
+	default void recordRequest(String operation, String endpoint, int status, long nanos, long requestBytes,
+			long responseBytes) {
+	}
+
+	/**
+	 * Called when a failed attempt is retried.
+	 */
+	default void recordRetry(String operation, String endpoint) {
+	}
+
+	/**
+	 * Called after a response body was bound to objects.
+	 * 
+	 * @param nanos time spent binding, not included in the network time
+	 */
+	default void recordParse(String operation, long nanos) {
+	}
+
+	/**
+	 * Called once by the transport to expose its connection pool.
+	 * 
+	 * @param idle number of idle connections
+	 * @param active number of connections in use
+	 */
+	default void bindConnectionPool(IntSupplier idle, IntSupplier active) {
+	}
+}
@@ -0,0 +1,77 @@
+package util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * {@link Metrics} publishing to a Micrometer registry. Micrometer is an
+ * optional dependency, only needed when this class is used.
+ * 
+ * <ul>
+ * <li><code>jobserver.client.requests</code> timer tagged with operation, endpoint and status
+ * <li><code>jobserver.client.request.bytes</code> and <code>jobserver.client.response.bytes</code>
+ * summaries tagged with operation
+ * <li><code>jobserver.client.retries</code> counter tagged with operation and endpoint
+ * <li><code>jobserver.client.parse</code> timer tagged with operation
+ * <li><code>jobserver.client.connections</code> gauge tagged with state idle or active
+ * </ul>
+ */
+public class MicrometerMetrics implements Metrics {
+	private final MeterRegistry registry;
+	private final String client;
+	// gauges only hold weak references to their state
+	private IntSupplier idle;
+	private IntSupplier active;
+
+	/**
+	 * @param registry the registry
+	 * @param client value of the <code>client</code> tag, telling apart
+	 *        clients of different job servers
+	 */
+	public MicrometerMetrics(MeterRegistry registry, String client) {
+		this.registry = registry;
+		this.client = client;
+	}
+
+	@Override
+	public void recordRequest(String operation, String endpoint, int status, long nanos, long requestBytes,
+			long responseBytes) {
+		Timer.builder("jobserver.client.requests").tag("client", client).tag("operation", operation)
+				.tag("endpoint", endpoint).tag("status", Integer.toString(status)).register(registry)
+				.record(nanos, TimeUnit.NANOSECONDS);
+		if (requestBytes > 0)
+			DistributionSummary.builder("jobserver.client.request.bytes").baseUnit("bytes").tag("client", client)
+					.tag("operation", operation).register(registry).record(requestBytes);
+		if (responseBytes > 0)
+			DistributionSummary.builder("jobserver.client.response.bytes").baseUnit("bytes").tag("client", client)
+					.tag("operation", operation).register(registry).record(responseBytes);
+	}
+
+	@Override
+	public void recordRetry(String operation, String endpoint) {
+		Counter.builder("jobserver.client.retries").tag("client", client).tag("operation", operation)
+				.tag("endpoint", endpoint).register(registry).increment();
+	}
+
+	@Override
+	public void recordParse(String operation, long nanos) {
+		Timer.builder("jobserver.client.parse").tag("client", client).tag("operation", operation).register(registry)
+				.record(nanos, TimeUnit.NANOSECONDS);
+	}
+
+	@Override
+	public synchronized void bindConnectionPool(IntSupplier idle, IntSupplier active) {
+		this.idle = idle;
+		this.active = active;
+		Gauge.builder("jobserver.client.connections", idle, IntSupplier::getAsInt).tag("client", client)
+				.tag("state", "idle").register(registry);
+		Gauge.builder("jobserver.client.connections", active, IntSupplier::getAsInt).tag("client", client)
+				.tag("state", "active").register(registry);
+	}
+}
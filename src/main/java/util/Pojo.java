@@ -5,17 +5,29 @@ import java.lang.reflect.Type;
 import com.google.gson.*;
 
 public class Pojo {
-	public final static transient Gson gson = new GsonBuilder().registerTypeAdapter(Double.class, new JsonSerializer<Double>() {  
-		@Override  
-        public JsonElement serialize(Double src, Type typeOfSrc, JsonSerializationContext context) {  
-            if (src == src.longValue())  
-                return new JsonPrimitive(src.longValue());  
-            return new JsonPrimitive(src);  
-        }
-    }).setPrettyPrinting().create();
+	/**
+	 * Compact instance used on the wire.
+	 */
+	public final static transient Gson gson = builder().create();
+
+	/**
+	 * Pretty printing instance used by <code>toString()</code>.
+	 */
+	public final static transient Gson prettyGson = builder().setPrettyPrinting().create();
+
+	private static GsonBuilder builder() {
+		return new GsonBuilder().registerTypeAdapter(Double.class, new JsonSerializer<Double>() {  
+			@Override  
+			public JsonElement serialize(Double src, Type typeOfSrc, JsonSerializationContext context) {  
+				if (src == src.longValue())  
+					return new JsonPrimitive(src.longValue());  
+				return new JsonPrimitive(src);  
+			}
+		});
+	}
 	
 	@Override
 	public String toString(){
-		return gson.toJson(this);
+		return prettyGson.toJson(this);
 	}
 }
@@ -0,0 +1,15 @@
+package util;
+
+/**
+ * Receives progress of a streamed request body such as a jar upload.
+ */
+@FunctionalInterface
+public interface ProgressListener {
+	/**
+	 * Called after each chunk has been handed to the connection.
+	 * 
+	 * @param bytesWritten bytes written so far
+	 * @param contentLength total bytes to write, or -1 if unknown
+	 */
+	void onProgress(long bytesWritten, long contentLength);
+}
@@ -0,0 +1,63 @@
+package util;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Request;
+
+/**
+ * One line per http exchange of {@link Http}, such as
+ * <code>method=GET path=/jobs/abc status=200 durationMs=12 requestBytes=0 responseBytes=345</code>.
+ * 
+ * <p>
+ * Failed exchanges are always logged at INFO, successful ones at DEBUG for a
+ * sampled fraction, so that the log stays quiet at INFO. Response bodies of
+ * logged exchanges follow at DEBUG, truncated. Nothing is formatted unless
+ * the level is enabled.
+ */
+@Slf4j
+class RequestLog {
+	static final int MAX_BODY = 1024;
+
+	private final double sampleRate;
+
+	/**
+	 * @param sampleRate fraction of successful exchanges logged, 0 to log none
+	 */
+	RequestLog(double sampleRate) {
+		this.sampleRate = sampleRate;
+	}
+
+	/**
+	 * @return whether the exchange is to be logged
+	 */
+	boolean isLogged(int status) {
+		if (isFailed(status))
+			return log.isInfoEnabled();
+		if (!log.isDebugEnabled())
+			return false;
+		return sampleRate >= 1 || sampleRate > 0 && ThreadLocalRandom.current().nextDouble() < sampleRate;
+	}
+
+	/**
+	 * Logs an exchange for which {@link #isLogged(int)} returned true.
+	 * 
+	 * @param body response body, or null if not read
+	 */
+	void log(Request request, int status, long nanos, long requestBytes, long responseBytes, String body) {
+		String format = "method={} path={} status={} durationMs={} requestBytes={} responseBytes={}";
+		Object[] args = { request.method(), request.url().encodedPath(), status, TimeUnit.NANOSECONDS.toMillis(nanos),
+				requestBytes, responseBytes };
+		if (isFailed(status))
+			log.info(format, args);
+		else
+			log.debug(format, args);
+		if (body != null && log.isDebugEnabled())
+			log.debug("body={}", body.length() > MAX_BODY ? body.substring(0, MAX_BODY) + "..." : body);
+	}
+
+	private static boolean isFailed(int status) {
+		return status < 200 || status >= 300;
+	}
+}
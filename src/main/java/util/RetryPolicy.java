@@ -0,0 +1,216 @@
+package util;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.ToIntFunction;
+
+import lombok.Builder;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.HttpUrl;
+import spark.jobserver.client.JobServerClientException;
+
+/**
+ * Retries and circuit breaker of a {@link Transport}, shared by the transports
+ * so that they fail, back off and recover the same way.
+ *
+ * <p>
+ * A GET failing on a connection error or with 429, 502, 503 or 504 is retried
+ * with jittered exponential backoff, as long as the deadline allows. Other
+ * methods are never retried. Connection failures and 5xx responses count as
+ * failures of the job server for the circuit breaker, any other response as a
+ * success. A failed synchronous job, answered with 500 and the job in
+ * <code>ERROR</code> status, is a failure of the job and not of the job server.
+ */
+@Slf4j
+public class RetryPolicy {
+	/**
+	 * Sends a request and returns its response once the headers are received.
+	 */
+	public interface Send<R> {
+		R send() throws IOException, InterruptedException;
+	}
+
+	/**
+	 * One attempt of a request run by {@link RetryPolicy#execute(String, HttpUrl, Attempt)}.
+	 */
+	public interface Attempt<T> {
+		T attempt() throws IOException;
+	}
+
+	private final int maxRetries;
+	private final long retryBackoffMillis;
+	private final long deadlineMillis;
+	private final CircuitBreaker breaker;
+	private final Metrics metrics;
+
+	/**
+	 * Any zero value falls back to the corresponding <code>DEFAULT_*</code>
+	 * constant of {@link Http}.
+	 *
+	 * @param maxRetries retries of a failed GET, negative to disable retries
+	 * @param retryBackoffMillis base delay before the first retry, doubled on each retry
+	 * @param deadlineMillis overall time budget of a GET including retries; no
+	 *        retry is started past it. Zero means no budget
+	 * @param failureThreshold consecutive failures opening the circuit breaker,
+	 *        negative to disable it
+	 * @param openMillis how long the circuit stays open
+	 * @param metrics receives the retries, or null
+	 */
+	@Builder
+	private RetryPolicy(int maxRetries, long retryBackoffMillis, long deadlineMillis, int failureThreshold,
+			long openMillis, Metrics metrics) {
+		this.maxRetries = maxRetries == 0 ? Http.DEFAULT_MAX_RETRIES : Math.max(maxRetries, 0);
+		this.retryBackoffMillis = retryBackoffMillis > 0 ? retryBackoffMillis : Http.DEFAULT_RETRY_BACKOFF_MILLIS;
+		this.deadlineMillis = deadlineMillis;
+		this.breaker = new CircuitBreaker(failureThreshold == 0 ? Http.DEFAULT_FAILURE_THRESHOLD : failureThreshold,
+				openMillis > 0 ? openMillis : Http.DEFAULT_OPEN_MILLIS);
+		this.metrics = metrics != null ? metrics : Metrics.NONE;
+	}
+
+	/**
+	 * Runs the attempts of a request until one succeeds or the failure must
+	 * not be retried, sleeping between them.
+	 */
+	public <T> T execute(String method, HttpUrl url, Attempt<T> attempt) throws IOException {
+		long deadline = deadline();
+		for (int i = 0;; i++) {
+			try {
+				return attempt.attempt();
+			} catch (IOException e) {
+				long delay = retryDelay(method, e, i, deadline);
+				if (delay < 0)
+					throw e;
+				retrying(method, url, delay, e);
+				try {
+					Thread.sleep(delay);
+				} catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Interrupted while retrying " + method + " " + url);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Lets an attempt through the circuit breaker. It must then be sent with
+	 * {@link #send(Send, ToIntFunction)}, or its outcome reported with
+	 * {@link #onResponse(int)}, {@link #onFailure(IOException)} or
+	 * {@link #onAbandoned()}. The body of a 5xx response must then be reported
+	 * with {@link #onServerError(String)}.
+	 *
+	 * @throws JobServerClientException with code {@link Http#CIRCUIT_OPEN}
+	 *         while the circuit is open
+	 */
+	public void allow(String method, HttpUrl url) throws JobServerClientException {
+		if (!breaker.allowRequest())
+			throw new JobServerClientException(Http.CIRCUIT_OPEN,
+					"Circuit breaker open, not sending " + method + " " + url);
+	}
+
+	/**
+	 * Sends an attempt let through by {@link #allow(String, HttpUrl)} and
+	 * records its outcome in the circuit breaker, whichever way it ends. A
+	 * 5xx response is left to {@link #onServerError(String)}.
+	 *
+	 * @param status status code of the response
+	 */
+	public <R> R send(Send<R> send, ToIntFunction<R> status) throws IOException, InterruptedException {
+		boolean recorded = false;
+		try {
+			R response = send.send();
+			onResponse(status.applyAsInt(response));
+			recorded = true;
+			return response;
+		} catch (IOException e) {
+			onFailure(e);
+			recorded = true;
+			throw e;
+		} finally {
+			if (!recorded)
+				onAbandoned();
+		}
+	}
+
+	/**
+	 * Records a response below 500. A 5xx response is recorded by
+	 * {@link #onServerError(String)} once its body is read.
+	 */
+	public void onResponse(int status) {
+		if (status < 500)
+			breaker.onSuccess();
+	}
+
+	/**
+	 * Records a 5xx response.
+	 *
+	 * @param body its body, or null if it could not be read
+	 */
+	public void onServerError(String body) {
+		if (Http.isJobError(body))
+			breaker.onSuccess();
+		else
+			breaker.onFailure();
+	}
+
+	/**
+	 * Records an attempt that got no response. An interrupted attempt says
+	 * nothing about the job server and is only abandoned.
+	 */
+	public void onFailure(IOException e) {
+		if (e instanceof InterruptedIOException && !(e instanceof SocketTimeoutException))
+			breaker.onAbandoned();
+		else
+			breaker.onFailure();
+	}
+
+	/**
+	 * Records an attempt that ended without outcome, such as an interrupted
+	 * one, so that the trial of a half-open circuit goes to the next request.
+	 */
+	public void onAbandoned() {
+		breaker.onAbandoned();
+	}
+
+	/**
+	 * @return the time past which no retry is started, for {@link #retryDelay(String, IOException, int, long)}
+	 */
+	public long deadline() {
+		return deadlineMillis > 0 ? System.currentTimeMillis() + deadlineMillis : Long.MAX_VALUE;
+	}
+
+	/**
+	 * @return the delay before retrying the failed attempt, or -1 if it must not be retried
+	 */
+	public long retryDelay(String method, IOException e, int attempt, long deadline) {
+		if (!"GET".equals(method) || attempt >= maxRetries || !retryable(e))
+			return -1;
+		long backoff = retryBackoffMillis << Math.min(attempt, 20);
+		long delay = (long) (backoff * (0.5 + ThreadLocalRandom.current().nextDouble()));
+		return System.currentTimeMillis() + delay < deadline ? delay : -1;
+	}
+
+	/**
+	 * Reports a retry to the metrics and the log.
+	 */
+	public void retrying(String method, HttpUrl url, long delay, IOException e) {
+		if (metrics != Metrics.NONE) {
+			String endpoint = Http.endpoint(url);
+			metrics.recordRetry(Http.operation(method, endpoint), endpoint);
+		}
+		log.warn("Retrying {} {} in {}ms: {}", method, url, delay, e.getMessage());
+	}
+
+	public CircuitBreaker.State circuitState() {
+		return breaker.getState();
+	}
+
+	private static boolean retryable(IOException e) {
+		if (e instanceof JobServerClientException) {
+			int code = ((JobServerClientException) e).getCode();
+			return code == 429 || code == 502 || code == 503 || code == 504;
+		}
+		return !(e instanceof InterruptedIOException) || e instanceof SocketTimeoutException;
+	}
+}
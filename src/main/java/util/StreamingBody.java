@@ -0,0 +1,90 @@
+package util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+import okio.Okio;
+import okio.Source;
+
+/**
+ * Request body writing a file or stream to the connection in fixed-size chunks,
+ * so that a large binary never has to be held in the heap as a whole.
+ * 
+ * <p>
+ * Bodies created from a file are repeatable, bodies created from a stream can
+ * only be written once and leave closing the stream to the caller. Writing
+ * them again, as OkHttp does when it retries a stale pooled connection, fails
+ * instead of sending what is left of the stream.
+ */
+public class StreamingBody extends RequestBody {
+	public static final int CHUNK_SIZE = 64 * 1024;
+
+	private final MediaType contentType;
+	private final File file;
+	private final InputStream stream;
+	private final long contentLength;
+	private final ProgressListener listener;
+	private final AtomicBoolean written = new AtomicBoolean();
+
+	private StreamingBody(MediaType contentType, File file, InputStream stream, long contentLength,
+			ProgressListener listener) {
+		this.contentType = contentType;
+		this.file = file;
+		this.stream = stream;
+		this.contentLength = contentLength;
+		this.listener = listener;
+	}
+
+	public static StreamingBody of(MediaType contentType, File file, ProgressListener listener) {
+		return new StreamingBody(contentType, file, null, file.length(), listener);
+	}
+
+	/**
+	 * @param contentLength length of the stream, or -1 if unknown in which case
+	 *        the body is sent chunked
+	 */
+	public static StreamingBody of(MediaType contentType, InputStream stream, long contentLength,
+			ProgressListener listener) {
+		return new StreamingBody(contentType, null, stream, contentLength, listener);
+	}
+
+	@Override
+	public MediaType contentType() {
+		return contentType;
+	}
+
+	@Override
+	public long contentLength() {
+		return contentLength;
+	}
+
+	@Override
+	public void writeTo(BufferedSink sink) throws IOException {
+		if (file != null) {
+			try (Source source = Okio.source(file)) {
+				copy(source, sink);
+			}
+		} else {
+			if (!written.compareAndSet(false, true))
+				throw new IOException("Cannot send a request body read from a stream twice");
+			// not closed on purpose, the stream belongs to the caller
+			copy(Okio.source(stream), sink);
+		}
+	}
+
+	private void copy(Source source, BufferedSink sink) throws IOException {
+		long written = 0;
+		long read;
+		while ((read = source.read(sink.buffer(), CHUNK_SIZE)) != -1) {
+			sink.emitCompleteSegments();
+			written += read;
+			if (listener != null)
+				listener.onProgress(written, contentLength);
+		}
+	}
+}
@@ -0,0 +1,89 @@
+package util;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.concurrent.CompletableFuture;
+
+import okhttp3.HttpUrl;
+
+/**
+ * Sends the requests of a <code>JobServerClient</code>. {@link Http}, based on
+ * OkHttp, is the default transport.
+ * 
+ * <p>
+ * Non-2xx responses are reported as a <code>JobServerClientException</code>
+ * carrying the status code, thrown by the synchronous methods and completing
+ * the futures of the asynchronous ones. Response bodies are decoded with the
+ * charset of their content type, UTF-8 by default.
+ */
+public interface Transport extends Closeable {
+	String get(HttpUrl url) throws IOException;
+
+	/**
+	 * Executes a GET and reads the response with the given reader while it is
+	 * received.
+	 */
+	<T> T get(HttpUrl url, BodyReader<T> reader) throws IOException;
+
+	String postJson(HttpUrl url, String json) throws IOException;
+
+	/**
+	 * Posts the JSON and reads the response with the given reader.
+	 */
+	<T> T postJson(HttpUrl url, String json, BodyReader<T> reader) throws IOException;
+
+	/**
+	 * Posts the UTF-8 content of the file, streamed from disk.
+	 */
+	String postJson(HttpUrl url, File json) throws IOException;
+
+	/**
+	 * Posts the UTF-8 content of the stream as it is read. The stream is not
+	 * closed.
+	 */
+	String postJson(HttpUrl url, InputStream json) throws IOException;
+
+	String postJar(HttpUrl url, File jar, ProgressListener listener) throws IOException;
+
+	/**
+	 * @param length length of the stream, or -1 if unknown
+	 */
+	String postJar(HttpUrl url, InputStream jar, long length, ProgressListener listener) throws IOException;
+
+	String delete(HttpUrl url) throws IOException;
+
+	/**
+	 * Executes a GET and returns its body as a character stream. Closing the
+	 * reader releases the connection.
+	 */
+	Reader openReader(HttpUrl url) throws IOException;
+
+	CompletableFuture<String> getAsync(HttpUrl url);
+
+	CompletableFuture<String> postJsonAsync(HttpUrl url, String json);
+
+	CompletableFuture<String> postJsonAsync(HttpUrl url, File json);
+
+	CompletableFuture<String> postJsonAsync(HttpUrl url, InputStream json);
+
+	CompletableFuture<String> postJarAsync(HttpUrl url, File jar, ProgressListener listener);
+
+	CompletableFuture<String> postJarAsync(HttpUrl url, InputStream jar, long length, ProgressListener listener);
+
+	CompletableFuture<String> deleteAsync(HttpUrl url);
+
+	/**
+	 * Max concurrent requests to one job server, used as the default
+	 * concurrency of batches.
+	 */
+	int maxRequestsPerHost();
+
+	/**
+	 * Releases the connections and threads of this transport.
+	 */
+	@Override
+	void close();
+}
@@ -0,0 +1,122 @@
+package spark.jobserver.client;
+
+import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import junit.framework.Assert;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.SocketPolicy;
+import util.Metrics;
+
+/**
+ * Tests the <code>*Async</code> methods of the client against a mock job server.
+ */
+public class AsyncTest {
+	private MockWebServer server;
+	private JobServerClient client;
+
+	@Before
+	public void setUp() throws Exception {
+		server = new MockWebServer();
+		server.start();
+		client = JobServerClient.builder().host(server.getHostName()).port(server.getPort()).maxRetries(-1)
+				.build();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		client.close();
+		server.shutdown();
+	}
+
+	@Test(timeout = 10000)
+	public void completesWithParsedResponse() throws Exception {
+		server.enqueue(new MockResponse().setBody("[\"ctx\"]"));
+		server.enqueue(new MockResponse().setBody("{\"status\":\"STARTED\",\"jobId\":\"j1\"}"));
+		server.enqueue(new MockResponse().setBody("{\"status\":\"OK\",\"result\":42}"));
+		Assert.assertEquals("ctx", client.getContextsAsync().get().get(0));
+		Assert.assertEquals("j1", client.startJobAsync("", new HashMap<>()).get().getJobId());
+		JobInfo job = client.getJobResultAsync("j1").get();
+		Assert.assertEquals("j1", job.getJobId());
+		Assert.assertEquals(42, job.getResult().getAsInt());
+	}
+
+	@Test(timeout = 10000)
+	public void failsOnHttpError() throws Exception {
+		server.enqueue(new MockResponse().setResponseCode(404).setBody("{\"status\":\"ERROR\"}"));
+		try {
+			client.killJobAsync("j1").get();
+			Assert.fail();
+		} catch (ExecutionException e) {
+			Assert.assertEquals(404, ((JobServerClientException) e.getCause()).getCode());
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void failsWhenResponseHandlingThrows() throws Exception {
+		client.close();
+		client = JobServerClient.builder().host(server.getHostName()).port(server.getPort())
+				.metrics(new Metrics() {
+					@Override
+					public void recordRequest(String operation, String endpoint, int status, long nanos,
+							long requestBytes, long responseBytes) {
+						throw new IllegalStateException("broken metrics");
+					}
+				}).build();
+		server.enqueue(new MockResponse().setBody("OK"));
+		try {
+			client.killJobAsync("j1").get();
+			Assert.fail();
+		} catch (ExecutionException e) {
+			Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void cancelsCall() throws Exception {
+		client.close();
+		client = JobServerClient.builder().host(server.getHostName()).port(server.getPort()).maxRequests(1)
+				.maxRequestsPerHost(1).readTimeoutMillis(60000).failureThreshold(1).build();
+		server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE));
+		server.enqueue(new MockResponse().setBody("OK"));
+		server.enqueue(new MockResponse().setBody("OK"));
+		CompletableFuture<String> stuck = client.killJobAsync("j1");
+		server.takeRequest();
+		Assert.assertTrue(stuck.cancel(true));
+		// the only request slot is released by cancelling the call holding it
+		Assert.assertEquals("OK", client.killJobAsync("j2").get());
+		Thread.sleep(100);
+		// a cancelled call is no failure of the job server
+		Assert.assertEquals("OK", client.killJobAsync("j3").get());
+	}
+
+	@Test(timeout = 10000)
+	public void parsesOnCallbackExecutor() throws Exception {
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		AtomicInteger tasks = new AtomicInteger();
+		client.close();
+		client = JobServerClient.builder().host(server.getHostName()).port(server.getPort())
+				.callbackExecutor(task -> {
+					tasks.incrementAndGet();
+					executor.execute(task);
+				}).build();
+		try {
+			server.enqueue(new MockResponse().setBody("[\"ctx\"]"));
+			Assert.assertEquals("ctx", client.getContextsAsync().get().get(0));
+			Assert.assertEquals(1, tasks.get());
+		} finally {
+			executor.shutdownNow();
+		}
+		executor.awaitTermination(1, TimeUnit.SECONDS);
+	}
+}
@@ -0,0 +1,144 @@
+package spark.jobserver.client;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Date;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import junit.framework.Assert;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+/**
+ * Tests the persisted index of uploaded binaries, and the uploads it skips
+ * against a mock job server.
+ */
+public class BinaryIndexTest {
+	private static final String T1 = "2017-07-20T02:11:12.345Z";
+	private static final String T2 = "2017-07-21T02:11:12.345Z";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	private MockWebServer server;
+	private JobServerClient client;
+	private File indexFile;
+	private File jar;
+
+	@Before
+	public void setUp() throws Exception {
+		server = new MockWebServer();
+		server.start();
+		indexFile = new File(folder.getRoot(), "index.properties");
+		jar = folder.newFile("app.jar");
+		Files.write(jar.toPath(), "v1".getBytes(StandardCharsets.UTF_8));
+		client = JobServerClient.builder().host(server.getHostName()).port(server.getPort())
+				.binaryIndexFile(indexFile).build();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		client.close();
+		server.shutdown();
+	}
+
+	private static MockResponse binaries(String uploadTime) {
+		return new MockResponse().setBody(uploadTime == null ? "{}"
+				: "{\"app\":{\"binary-type\":\"Jar\",\"upload-time\":\"" + uploadTime + "\"}}");
+	}
+
+	/**
+	 * Uploads v1 of the jar, which the server then lists as uploaded at T1.
+	 */
+	private void uploadFirst() throws Exception {
+		server.enqueue(binaries(null));
+		server.enqueue(new MockResponse().setBody("OK"));
+		server.enqueue(binaries(T1));
+		UploadResult result = client.uploadJobJarIfChanged(jar, "app");
+		Assert.assertFalse(result.isSkipped());
+		Assert.assertEquals("OK", result.getResponse());
+		Assert.assertEquals(Times.parseEpochMillis(T1), result.getUploadTime().getTime());
+		Assert.assertEquals("/binaries", server.takeRequest().getPath());
+		Assert.assertEquals("POST", server.takeRequest().getMethod());
+		Assert.assertEquals("/binaries", server.takeRequest().getPath());
+	}
+
+	@Test
+	public void skipsUnchangedUpload() throws Exception {
+		uploadFirst();
+		Assert.assertTrue(new BinaryIndex(indexFile).isCurrent("app", BinaryIndex.sha256(jar),
+				uploadedAt(Times.parseEpochMillis(T1))));
+
+		server.enqueue(binaries(T1));
+		UploadResult result = client.uploadJobJarIfChanged(jar, "app");
+		Assert.assertTrue(result.isSkipped());
+		Assert.assertNull(result.getResponse());
+		Assert.assertEquals("GET", server.takeRequest().getMethod());
+		Assert.assertEquals(4, server.getRequestCount());
+	}
+
+	@Test
+	public void uploadsChangedContent() throws Exception {
+		uploadFirst();
+		Files.write(jar.toPath(), "v2".getBytes(StandardCharsets.UTF_8));
+
+		server.enqueue(binaries(T1));
+		server.enqueue(new MockResponse().setBody("OK"));
+		server.enqueue(binaries(T2));
+		UploadResult result = client.uploadJobJarIfChanged(jar, "app");
+		Assert.assertFalse(result.isSkipped());
+		server.takeRequest();
+		Assert.assertEquals("v2", server.takeRequest().getBody().readUtf8());
+		Assert.assertTrue(new BinaryIndex(indexFile).isCurrent("app", BinaryIndex.sha256(jar),
+				uploadedAt(Times.parseEpochMillis(T2))));
+	}
+
+	@Test
+	public void uploadsMissingOrReplacedBinary() throws Exception {
+		uploadFirst();
+
+		server.enqueue(binaries(null));
+		server.enqueue(new MockResponse().setBody("OK"));
+		server.enqueue(binaries(T2));
+		Assert.assertFalse(client.uploadJobJarIfChanged(jar, "app").isSkipped());
+
+		server.enqueue(binaries(T1)); // replaced by someone else since
+		server.enqueue(new MockResponse().setBody("OK"));
+		server.enqueue(binaries(T2));
+		Assert.assertFalse(client.uploadJobJarIfChanged(jar, "app").isSkipped());
+		Assert.assertEquals(9, server.getRequestCount());
+	}
+
+	private static Binary uploadedAt(long millis) {
+		Binary binary = new Binary();
+		binary.setUpload_time(new Date(millis));
+		return binary;
+	}
+
+	@Test
+	public void persistsEntries() throws Exception {
+		File file = new File(folder.getRoot(), "binaries.properties");
+		new BinaryIndex(file).put("app", "abc", 1000);
+		BinaryIndex index = new BinaryIndex(file);
+		Assert.assertTrue(index.isCurrent("app", "abc", uploadedAt(1000)));
+		Assert.assertFalse(index.isCurrent("app", "abd", uploadedAt(1000)));
+		Assert.assertFalse(index.isCurrent("app", "abc", uploadedAt(2000)));
+		Assert.assertFalse(index.isCurrent("app", "abc", null));
+	}
+
+	@Test
+	public void treatsMalformedEntriesAsNotCurrent() throws Exception {
+		File file = new File(folder.getRoot(), "binaries.properties");
+		Files.write(file.toPath(), Arrays.asList("nocomma=abc", "nan=abc,soon", "empty=abc,"), StandardCharsets.UTF_8);
+		BinaryIndex index = new BinaryIndex(file);
+		Assert.assertFalse(index.isCurrent("nocomma", "abc", uploadedAt(1000)));
+		Assert.assertFalse(index.isCurrent("nan", "abc", uploadedAt(1000)));
+		Assert.assertFalse(index.isCurrent("empty", "abc", uploadedAt(1000)));
+	}
+}
@@ -0,0 +1,109 @@
+package spark.jobserver.client;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import junit.framework.Assert;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.GzipSink;
+import okio.GzipSource;
+import okio.Okio;
+
+/**
+ * Tests gzip request and response bodies, and job data streamed from files,
+ * against a mock job server.
+ */
+public class CompressionTest {
+	private MockWebServer server;
+	private JobServerClient client;
+
+	@Before
+	public void setUp() throws Exception {
+		server = new MockWebServer();
+		server.start();
+		client = JobServerClient.builder().host(server.getHostName()).port(server.getPort())
+				.compressRequestsOverBytes(100).build();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		client.close();
+		server.shutdown();
+	}
+
+	@Test
+	public void decodesGzipResponses() throws Exception {
+		server.enqueue(new MockResponse().setHeader("Content-Encoding", "gzip")
+				.setBody(gzip("{\"status\":\"OK\",\"result\":\"done\"}")));
+		Assert.assertEquals("done", client.getJobResult("j1").getResult().getAsString());
+		Assert.assertEquals("gzip", server.takeRequest().getHeader("Accept-Encoding"));
+	}
+
+	@Test
+	public void compressesLargeJobDataUntilRejected() throws Exception {
+		String data = "input.string = \"" + new String(new char[200]).replace('\0', 'a') + "\"";
+		server.enqueue(new MockResponse().setBody("{\"status\":\"STARTED\"}"));
+		server.enqueue(new MockResponse().setResponseCode(415));
+		server.enqueue(new MockResponse().setBody("{\"status\":\"STARTED\"}"));
+		server.enqueue(new MockResponse().setBody("{\"status\":\"STARTED\"}"));
+		client.startJob("small", new HashMap<>());
+		client.startJob(data, new HashMap<>());
+		client.startJob(data, new HashMap<>());
+
+		Assert.assertNull(server.takeRequest().getHeader("Content-Encoding"));
+		RecordedRequest compressed = server.takeRequest();
+		Assert.assertEquals("gzip", compressed.getHeader("Content-Encoding"));
+		Assert.assertEquals(data, Okio.buffer(new GzipSource(compressed.getBody())).readUtf8());
+		RecordedRequest fallback = server.takeRequest();
+		Assert.assertNull(fallback.getHeader("Content-Encoding"));
+		Assert.assertEquals(data, fallback.getBody().readUtf8());
+		Assert.assertNull(server.takeRequest().getHeader("Content-Encoding"));
+	}
+
+	@Test
+	public void streamsJobDataFiles() throws Exception {
+		File small = File.createTempFile("job", ".conf");
+		File large = File.createTempFile("job", ".conf");
+		try {
+			Files.write(small.toPath(), "text = \"h\u00e9\"".getBytes(StandardCharsets.UTF_8));
+			Files.write(large.toPath(), new byte[1000]);
+			for (int i = 0; i < 3; i++)
+				server.enqueue(new MockResponse().setBody("{\"status\":\"STARTED\"}"));
+			client.startJob(small, new HashMap<>());
+			client.startJob(large, new HashMap<>());
+			client.startJob(new ByteArrayInputStream(new byte[1000]), new HashMap<>());
+
+			RecordedRequest plain = server.takeRequest();
+			Assert.assertEquals(String.valueOf(small.length()), plain.getHeader("Content-Length"));
+			Assert.assertEquals("text = \"h\u00e9\"", plain.getBody().readUtf8());
+			RecordedRequest compressed = server.takeRequest();
+			Assert.assertEquals("gzip", compressed.getHeader("Content-Encoding"));
+			Assert.assertEquals(1000, Okio.buffer(new GzipSource(compressed.getBody())).readByteArray().length);
+			RecordedRequest chunked = server.takeRequest();
+			Assert.assertEquals("chunked", chunked.getHeader("Transfer-Encoding"));
+			Assert.assertEquals(1000, chunked.getBodySize());
+		} finally {
+			small.delete();
+			large.delete();
+		}
+	}
+
+	private static Buffer gzip(String text) throws Exception {
+		Buffer buffer = new Buffer();
+		try (BufferedSink sink = Okio.buffer(new GzipSink(buffer))) {
+			sink.writeUtf8(text);
+		}
+		return buffer;
+	}
+}
@@ -0,0 +1,133 @@
+package spark.jobserver.client;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import junit.framework.Assert;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+/**
+ * Tests warming, leasing and replacing pooled contexts against a mock job server.
+ */
+public class ContextPoolTest {
+	private static final ContextProfile SMALL = new ContextProfile(2, "1g", null);
+
+	private final Set<String> contexts = ConcurrentHashMap.newKeySet();
+	private final List<String> listings = new CopyOnWriteArrayList<>();
+	private long startedAt;
+	private MockWebServer server;
+	private JobServerClient client;
+	private ContextPool pool;
+
+	@Before
+	public void setUp() throws Exception {
+		server = new MockWebServer();
+		server.setDispatcher(new Dispatcher() {
+			@Override
+			public MockResponse dispatch(RecordedRequest request) {
+				String path = request.getPath();
+				if (path.equals("/contexts")) {
+					listings.add(path);
+					return new MockResponse().setBody(contexts.toString().replaceAll("(\\w[\\w-]*)", "\"$1\""));
+				}
+				String name = path.replaceAll("^/contexts/([^?]*).*$", "$1");
+				if (request.getMethod().equals("POST"))
+					contexts.add(name);
+				else
+					contexts.remove(name);
+				return new MockResponse().setBody("OK");
+			}
+		});
+		server.start();
+		client = JobServerClient.builder().host(server.getHostName()).port(server.getPort()).build();
+		startedAt = System.currentTimeMillis();
+		pool = ContextPool.builder().client(client).profile(SMALL, 2).maintenanceIntervalMillis(50).build();
+		awaitIdle(2);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		pool.close();
+		client.close();
+		server.shutdown();
+	}
+
+	@Test
+	public void leasesWarmContextAndRefills() throws Exception {
+		try (ContextPool.Lease lease = pool.lease(SMALL)) {
+			Assert.assertTrue(contexts.contains(lease.getContextName()));
+			Assert.assertEquals(1, pool.getLeasedCount());
+			awaitIdle(2);
+		}
+		Assert.assertEquals(0, pool.getLeasedCount());
+		Assert.assertEquals(3, pool.getIdleCount(SMALL));
+	}
+
+	@Test
+	public void replacesLostContexts() throws Exception {
+		contexts.clear();
+		long deadline = System.currentTimeMillis() + 5000;
+		while (contexts.size() < 2 && System.currentTimeMillis() < deadline)
+			Thread.sleep(20);
+		Assert.assertEquals(2, contexts.size());
+	}
+
+	@Test
+	public void deletesUnhealthyContexts() throws Exception {
+		String name;
+		try (ContextPool.Lease lease = pool.lease(SMALL)) {
+			name = lease.getContextName();
+			lease.markUnhealthy();
+		}
+		Assert.assertFalse(contexts.contains(name));
+	}
+
+	@Test
+	public void keepsContextsNewerThanListing() throws Exception {
+		pool.dropLost(Collections.emptySet(), startedAt);
+		Assert.assertEquals(2, pool.getIdleCount(SMALL));
+	}
+
+	@Test
+	public void leaseDoesNotListContexts() throws Exception {
+		ContextPool slow = ContextPool.builder().client(client).profile(SMALL, 1)
+				.maintenanceIntervalMillis(60000).namePrefix("slow-").build();
+		try {
+			long deadline = System.currentTimeMillis() + 5000;
+			while (slow.getIdleCount(SMALL) < 1 && System.currentTimeMillis() < deadline)
+				Thread.sleep(20);
+			pool.close();
+			int before = listings.size();
+			for (int i = 0; i < 5; i++)
+				slow.lease(SMALL).close();
+			Assert.assertEquals(before, listings.size());
+		} finally {
+			slow.close();
+		}
+	}
+
+	@Test
+	public void deletesContextsAfterClose() throws Exception {
+		pool.close();
+		Assert.assertEquals(0, pool.getIdleCount(SMALL));
+		Thread.sleep(200);
+		Assert.assertTrue(contexts.isEmpty());
+	}
+
+	private void awaitIdle(int count) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (pool.getIdleCount(SMALL) < count && System.currentTimeMillis() < deadline)
+			Thread.sleep(20);
+		Assert.assertEquals(count, pool.getIdleCount(SMALL));
+	}
+}
@@ -0,0 +1,89 @@
+package spark.jobserver.client;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Date;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import junit.framework.Assert;
+
+/**
+ * Tests the ingestion, queries and persistence of a job history.
+ */
+public class JobHistoryTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static JobInfo job(String jobId, JobStatus status, String context, String duration, long start) {
+		JobInfo job = new JobInfo();
+		job.setJobId(jobId);
+		job.setStatus(status);
+		job.setContext(context);
+		job.setClassPath("y");
+		job.setDuration(duration);
+		job.setStartTime(new Date(start));
+		return job;
+	}
+
+	@Test
+	public void ingestsOnlyChanges() throws Exception {
+		JobHistory history = new JobHistory();
+		Assert.assertEquals(2, history.ingest(Arrays.asList(job("1", JobStatus.RUNNING, "x", null, 1000),
+				job("2", JobStatus.FINISHED, "z", "1.0 secs", 2000))));
+		Assert.assertEquals(1, history.ingest(Arrays.asList(job("1", JobStatus.FINISHED, "x", "3.0 secs", 1000),
+				job("2", JobStatus.FINISHED, "z", "1.0 secs", 2000))));
+		Assert.assertEquals(0, history.query().status(JobStatus.RUNNING).count());
+		Assert.assertEquals("1", history.query().context("x").status(JobStatus.FINISHED).list().get(0).getJobId());
+		Assert.assertEquals(1, history.query().startedBetween(new Date(1500), null).count());
+		Assert.assertEquals(3000, history.query().classPath("y").durationPercentileMillis(95));
+		Assert.assertEquals(1000, history.query().durationPercentileMillis(50));
+	}
+
+	@Test
+	public void replaysFile() throws Exception {
+		File file = new File(folder.getRoot(), "history.jsonl");
+		try (JobHistory history = new JobHistory(file)) {
+			history.ingest(Arrays.asList(job("1", JobStatus.RUNNING, "x", null, 1000)));
+			history.ingest(Arrays.asList(job("1", JobStatus.ERROR, "x", "2.5 secs", 1000)));
+		}
+		try (JobHistory history = new JobHistory(file)) {
+			Assert.assertEquals(1, history.size());
+			JobInfo job = history.get("1");
+			Assert.assertEquals(JobStatus.ERROR, job.getStatus());
+			Assert.assertEquals(1000, job.getStartTime().getTime());
+			Assert.assertEquals(0, history.ingest(Arrays.asList(job("1", JobStatus.ERROR, "x", "2.5 secs", 1000))));
+		}
+	}
+
+	@Test
+	public void keepsAppendingWhenCompactionFails() throws Exception {
+		File file = new File(folder.getRoot(), "history.jsonl");
+		File tmp = new File(folder.getRoot(), "history.jsonl.tmp");
+		Assert.assertTrue(tmp.mkdir());
+		try (JobHistory history = new JobHistory(file)) {
+			IOException failure = null;
+			for (int i = 0; i < 1000 && failure == null; i++) {
+				try {
+					history.ingest(Arrays.asList(job("1", i % 2 == 0 ? JobStatus.RUNNING : JobStatus.FINISHED, "x",
+							null, 1000)));
+				} catch (IOException e) {
+					failure = e;
+				}
+			}
+			Assert.assertNotNull(failure);
+
+			Assert.assertTrue(tmp.delete());
+			Assert.assertEquals(1, history.ingest(Arrays.asList(job("2", JobStatus.ERROR, "x", null, 2000))));
+		}
+		Assert.assertEquals(2, Files.readAllLines(file.toPath()).size());
+		try (JobHistory history = new JobHistory(file)) {
+			Assert.assertEquals(2, history.size());
+			Assert.assertEquals(JobStatus.ERROR, history.get("2").getStatus());
+		}
+	}
+}
@@ -0,0 +1,170 @@
+package spark.jobserver.client;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import junit.framework.Assert;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+/**
+ * Tests the routing, failover and fan-out of a cluster over two mock job servers.
+ */
+public class JobServerClusterTest {
+	private final List<MockWebServer> servers = new ArrayList<>();
+	private final String[] contexts = { "[]", "[]" };
+	private RoutingPolicy policy;
+	private JobServerCluster cluster;
+
+	@Before
+	public void setUp() throws Exception {
+		servers.add(new MockWebServer());
+		servers.add(new MockWebServer());
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		if (cluster != null)
+			cluster.close();
+		for (MockWebServer server : servers)
+			server.shutdown();
+	}
+
+	private void start(Function<RecordedRequest, MockResponse> a, Function<RecordedRequest, MockResponse> b)
+			throws Exception {
+		JobServerCluster.JobServerClusterBuilder builder = JobServerCluster.builder()
+				.healthCheckIntervalMillis(60000).maxFailures(1).policy(policy);
+		for (int i = 0; i < 2; i++) {
+			Function<RecordedRequest, MockResponse> responses = i == 0 ? a : b;
+			String listing = contexts[i];
+			MockWebServer server = servers.get(i);
+			server.setDispatcher(new Dispatcher() {
+				@Override
+				public MockResponse dispatch(RecordedRequest request) {
+					if (listing != null && request.getMethod().equals("GET") && request.getPath().equals("/contexts"))
+						return new MockResponse().setBody(listing);
+					return responses.apply(request);
+				}
+			});
+			server.start();
+			builder.client(JobServerClient.builder().host(server.getHostName()).port(server.getPort()).maxRetries(-1)
+					.build());
+		}
+		cluster = builder.build();
+	}
+
+	/**
+	 * @return the requests received since the last call, such as <code>GET /jobs</code>
+	 */
+	private static List<String> requests(MockWebServer server) throws InterruptedException {
+		List<String> requests = new ArrayList<>();
+		for (RecordedRequest request = server.takeRequest(100, TimeUnit.MILLISECONDS); request != null;
+				request = server.takeRequest(100, TimeUnit.MILLISECONDS))
+			requests.add(request.getMethod() + " " + request.getPath());
+		return requests;
+	}
+
+	private static MockResponse notFound(RecordedRequest request) {
+		return new MockResponse().setResponseCode(404).setBody("not found");
+	}
+
+	@Test
+	public void deletesOnEveryServerDespiteNotFound() throws Exception {
+		start(JobServerClusterTest::notFound, request -> new MockResponse().setBody("OK"));
+		Assert.assertEquals("OK", cluster.deleteBinary("app"));
+		Assert.assertEquals("OK", cluster.deleteContext("ctx"));
+		for (MockWebServer server : servers) {
+			List<String> requests = requests(server);
+			Assert.assertTrue(requests.contains("DELETE /binaries/app"));
+			Assert.assertTrue(requests.contains("DELETE /contexts/ctx"));
+		}
+	}
+
+	@Test
+	public void failsWhenNoServerHasIt() throws Exception {
+		start(JobServerClusterTest::notFound, JobServerClusterTest::notFound);
+		try {
+			cluster.deleteBinary("app");
+			Assert.fail();
+		} catch (JobServerClientException e) {
+			Assert.assertEquals(404, e.getCode());
+		}
+	}
+
+	@Test
+	public void routesJobCallsToTheServerThatStartedIt() throws Exception {
+		policy = (nodes, params) -> nodes.get(0);
+		start(request -> new MockResponse().setBody("{\"jobId\":\"j1\",\"status\":\"STARTED\"}"),
+				JobServerClusterTest::notFound);
+		Assert.assertEquals("j1", cluster.startJob("data", null).getJobId());
+		Assert.assertEquals("j1", cluster.getJobResult("j1").getJobId());
+		cluster.getConfig("j1");
+		Assert.assertFalse(requests(servers.get(1)).stream().anyMatch(r -> r.contains("/jobs")));
+		List<String> owner = requests(servers.get(0));
+		Assert.assertTrue(owner.contains("GET /jobs/j1"));
+		Assert.assertTrue(owner.contains("GET /jobs/j1/config"));
+	}
+
+	@Test
+	public void findsUnknownJobWithOneRequestPerServer() throws Exception {
+		start(JobServerClusterTest::notFound,
+				request -> new MockResponse().setBody("{\"jobId\":\"j2\",\"status\":\"RUNNING\"}"));
+		Assert.assertTrue(cluster.getJobResult("j2").isRunning());
+		Assert.assertTrue(cluster.getJobResult("j2").isRunning());
+		Assert.assertEquals(1, requests(servers.get(0)).stream().filter(r -> r.equals("GET /jobs/j2")).count());
+		Assert.assertEquals(2, requests(servers.get(1)).stream().filter(r -> r.equals("GET /jobs/j2")).count());
+	}
+
+	@Test
+	public void failsOverReadsAndEjectsFailingServer() throws Exception {
+		contexts[0] = null;
+		start(request -> new MockResponse().setResponseCode(500).setBody("down"),
+				request -> new MockResponse().setBody("{}"));
+		Assert.assertTrue(cluster.getBinaries().isEmpty());
+		Assert.assertFalse(cluster.getNodes().get(0).isHealthy());
+		Assert.assertTrue(cluster.getNodes().get(1).isHealthy());
+
+		requests(servers.get(0));
+		Assert.assertTrue(cluster.getBinaries().isEmpty());
+		Assert.assertFalse(requests(servers.get(0)).contains("GET /binaries"));
+		Assert.assertTrue(requests(servers.get(1)).contains("GET /binaries"));
+	}
+
+	@Test
+	public void fansOutListingsAndUploads() throws Exception {
+		contexts[0] = "[\"a\"]";
+		contexts[1] = "[\"b\"]";
+		start(request -> new MockResponse().setBody("OK"), request -> new MockResponse().setBody("OK"));
+		List<String> all = cluster.getContexts();
+		Assert.assertEquals(2, all.size());
+		Assert.assertTrue(all.contains("a") && all.contains("b"));
+
+		File jar = File.createTempFile("cluster", ".jar");
+		try {
+			Assert.assertEquals("OK", cluster.uploadJobJar(jar, "app"));
+		} finally {
+			jar.delete();
+		}
+		for (MockWebServer server : servers)
+			Assert.assertTrue(requests(server).contains("POST /binaries/app"));
+	}
+
+	@Test
+	public void deletesContextOnlyOnItsServer() throws Exception {
+		contexts[1] = "[\"ctx\"]";
+		start(request -> new MockResponse().setBody("OK"), request -> new MockResponse().setBody("OK"));
+		cluster.getContexts();
+		Assert.assertEquals("OK", cluster.deleteContext("ctx"));
+		Assert.assertFalse(requests(servers.get(0)).contains("DELETE /contexts/ctx"));
+		Assert.assertTrue(requests(servers.get(1)).contains("DELETE /contexts/ctx"));
+	}
+}
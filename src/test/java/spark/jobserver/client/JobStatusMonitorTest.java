@@ -0,0 +1,147 @@
+package spark.jobserver.client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import junit.framework.Assert;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+/**
+ * Tests the sweeps of a job status monitor against a mock job server whose
+ * responses are set per path.
+ */
+public class JobStatusMonitorTest {
+	private static final String LIST = "/jobs?limit=" + JobStatusMonitor.LIST_LIMIT;
+
+	private final Map<String, MockResponse> responses = new ConcurrentHashMap<>();
+	private final List<String> paths = new ArrayList<>();
+	private MockWebServer server;
+	private JobServerClient client;
+	private JobStatusMonitor monitor;
+
+	@Before
+	public void setUp() throws Exception {
+		server = new MockWebServer();
+		server.setDispatcher(new Dispatcher() {
+			@Override
+			public MockResponse dispatch(RecordedRequest request) {
+				synchronized (paths) {
+					paths.add(request.getPath());
+				}
+				MockResponse response = responses.get(request.getPath());
+				return response != null ? response : new MockResponse().setResponseCode(404);
+			}
+		});
+		server.start();
+		client = JobServerClient.builder().host(server.getHostName()).port(server.getPort()).maxRetries(-1).build();
+		monitor = new JobStatusMonitor(client, 1, TimeUnit.HOURS);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		monitor.close();
+		client.close();
+		server.shutdown();
+	}
+
+	private static MockResponse job(String jobId, String status) {
+		return new MockResponse().setBody("{\"jobId\":\"" + jobId + "\",\"status\":\"" + status + "\",\"result\":1}");
+	}
+
+	private List<String> takePaths() {
+		synchronized (paths) {
+			List<String> taken = new ArrayList<>(paths);
+			paths.clear();
+			return taken;
+		}
+	}
+
+	@Test
+	public void fetchesOnlyJobsThatLeftRunning() throws Exception {
+		responses.put(LIST, new MockResponse().setBody(
+				"[{\"jobId\":\"j1\",\"status\":\"RUNNING\"},{\"jobId\":\"j2\",\"status\":\"RUNNING\"}]"));
+		responses.put("/jobs/j3", job("j3", "FINISHED"));
+		List<JobStatus> changes = new ArrayList<>();
+		CompletableFuture<JobInfo> j1 = monitor.watch("j1", job -> changes.add(job.getStatus()));
+		monitor.watch("j2");
+		CompletableFuture<JobInfo> j3 = monitor.watch("j3");
+
+		monitor.sweep();
+		Assert.assertEquals(JobStatus.FINISHED, j3.get(1, TimeUnit.SECONDS).getStatus());
+		Assert.assertFalse(j1.isDone());
+		Assert.assertEquals(2, monitor.size());
+		List<String> sent = takePaths();
+		Assert.assertEquals(2, sent.size());
+		Assert.assertTrue(sent.contains(LIST));
+		Assert.assertTrue(sent.contains("/jobs/j3"));
+
+		responses.put(LIST, new MockResponse().setBody("[{\"jobId\":\"j2\",\"status\":\"RUNNING\"}]"));
+		responses.put("/jobs/j1", job("j1", "ERROR"));
+		monitor.sweep();
+		Assert.assertEquals(JobStatus.ERROR, j1.get(1, TimeUnit.SECONDS).getStatus());
+		Assert.assertEquals(2, changes.size());
+		Assert.assertEquals(JobStatus.RUNNING, changes.get(0));
+		Assert.assertEquals(JobStatus.ERROR, changes.get(1));
+		Assert.assertEquals(1, monitor.size());
+	}
+
+	@Test
+	public void doesNotFetchQueuedJobs() throws Exception {
+		responses.put(LIST, new MockResponse().setBody("[{\"jobId\":\"j1\",\"status\":\"STARTED\"},"
+				+ "{\"jobId\":\"j2\",\"status\":\"STARTED\"},{\"jobId\":\"j3\",\"status\":\"FINISHED\"}]"));
+		responses.put("/jobs/j3", job("j3", "FINISHED"));
+		List<JobStatus> changes = new ArrayList<>();
+		CompletableFuture<JobInfo> j1 = monitor.watch("j1", job -> changes.add(job.getStatus()));
+		monitor.watch("j2");
+		CompletableFuture<JobInfo> j3 = monitor.watch("j3");
+
+		monitor.sweep();
+		Assert.assertEquals(JobStatus.FINISHED, j3.get(1, TimeUnit.SECONDS).getStatus());
+		monitor.sweep();
+		Assert.assertFalse(j1.isDone());
+		Assert.assertEquals(1, changes.size());
+		Assert.assertEquals(JobStatus.STARTED, changes.get(0));
+		List<String> sent = takePaths();
+		Assert.assertEquals(3, sent.size());
+		Assert.assertEquals(1, sent.stream().filter("/jobs/j3"::equals).count());
+		Assert.assertEquals(2, sent.stream().filter(LIST::equals).count());
+	}
+
+	@Test
+	public void finishesUnknownJobs() throws Exception {
+		responses.put(LIST, new MockResponse().setBody("[]"));
+		CompletableFuture<JobInfo> gone = monitor.watch("gone");
+		monitor.sweep();
+		try {
+			gone.get(1, TimeUnit.SECONDS);
+			Assert.fail();
+		} catch (ExecutionException e) {
+			Assert.assertEquals(404, ((JobServerClientException) e.getCause()).getCode());
+		}
+		Assert.assertEquals(0, monitor.size());
+	}
+
+	@Test
+	public void failsWatchesAfterClose() throws Exception {
+		monitor.close();
+		try {
+			monitor.watch("j1").get(1, TimeUnit.SECONDS);
+			Assert.fail();
+		} catch (ExecutionException e) {
+			Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+		}
+		Assert.assertEquals(0, monitor.size());
+	}
+}
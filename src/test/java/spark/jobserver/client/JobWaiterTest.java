@@ -0,0 +1,96 @@
+package spark.jobserver.client;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import junit.framework.Assert;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+/**
+ * Tests awaitJob against a local mock job server.
+ */
+public class JobWaiterTest {
+	private MockWebServer server;
+	private JobServerClient client;
+
+	@Before
+	public void setUp() throws Exception {
+		server = new MockWebServer();
+		server.start();
+		client = JobServerClient.builder().host(server.getHostName()).port(server.getPort()).build();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		client.close();
+		server.shutdown();
+	}
+
+	@Test
+	public void awaitUntilFinished() throws Exception {
+		server.enqueue(job("RUNNING"));
+		server.enqueue(job("RUNNING"));
+		server.enqueue(job("FINISHED"));
+
+		JobInfo job = client.awaitJob("job1", 10, TimeUnit.SECONDS);
+		Assert.assertEquals(JobStatus.FINISHED, job.getStatus());
+		Assert.assertEquals("job1", job.getJobId());
+		Assert.assertEquals(3, server.getRequestCount());
+		Assert.assertEquals("/jobs/job1", server.takeRequest().getPath());
+	}
+
+	@Test(expected = TimeoutException.class)
+	public void awaitTimesOut() throws Exception {
+		for (int i = 0; i < 20; i++)
+			server.enqueue(job("RUNNING"));
+		client.awaitJob("job1", 300, TimeUnit.MILLISECONDS);
+	}
+
+	@Test
+	public void keepsPollingAfterFailedPoll() throws Exception {
+		server.enqueue(job("RUNNING"));
+		server.enqueue(new MockResponse().setResponseCode(500));
+		server.enqueue(job("FINISHED"));
+
+		JobInfo job = client.awaitJob("job1", 10, TimeUnit.SECONDS);
+		Assert.assertEquals(JobStatus.FINISHED, job.getStatus());
+		Assert.assertEquals(3, server.getRequestCount());
+	}
+
+	@Test
+	public void failsOnUnknownJob() throws Exception {
+		server.enqueue(new MockResponse().setResponseCode(404));
+		try {
+			client.awaitJob("job1", 10, TimeUnit.SECONDS);
+			Assert.fail();
+		} catch (JobServerClientException e) {
+			Assert.assertEquals(404, e.getCode());
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void failsWhenClientIsClosed() throws Exception {
+		server.enqueue(job("RUNNING"));
+		CompletableFuture<JobInfo> job = client.awaitJobAsync("job1", 1, TimeUnit.MINUTES);
+		server.takeRequest();
+		client.close();
+		try {
+			job.get();
+			Assert.fail();
+		} catch (ExecutionException e) {
+			Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+		}
+	}
+
+	private static MockResponse job(String status) {
+		return new MockResponse().setBody("{\"status\":\"" + status + "\",\"classPath\":\"test.Job\","
+				+ "\"duration\":\"0.2 secs\"}");
+	}
+}
@@ -0,0 +1,110 @@
+package spark.jobserver.client;
+
+import static util.Pojo.gson;
+
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.google.gson.JsonSyntaxException;
+
+import junit.framework.Assert;
+
+/**
+ * Tests the Gson adapters of the response types against payloads of the job
+ * server.
+ */
+public class JsonAdaptersTest {
+	private static final long START = 1466333832196L; // 2016-06-19T10:57:12.196Z
+
+	@Test
+	public void readsJob() {
+		JobInfo job = gson.fromJson("{\"duration\":\"6.341 secs\",\"classPath\":\"spark.jobserver.WordCountExample\","
+				+ "\"startTime\":\"2016-06-19T16:27:12.196+05:30\",\"context\":\"b7ea0eb5-spark.jobserver.WordCountExample\","
+				+ "\"result\":{\"a\":2,\"b\":1},\"status\":\"FINISHED\",\"jobId\":\"58b4ded9\","
+				+ "\"contextId\":\"2e3b3d20\",\"errors\":[{\"x\":1}]}", JobInfo.class);
+		Assert.assertEquals("58b4ded9", job.getJobId());
+		Assert.assertEquals(JobStatus.FINISHED, job.getStatus());
+		Assert.assertEquals("b7ea0eb5-spark.jobserver.WordCountExample", job.getContext());
+		Assert.assertEquals("spark.jobserver.WordCountExample", job.getClassPath());
+		Assert.assertEquals(6341, job.getDurationMillis());
+		Assert.assertEquals(START, job.getStartTimeEpochMillis());
+		Assert.assertEquals(2, job.getResult().getAsJsonObject().get("a").getAsInt());
+	}
+
+	@Test
+	public void readsNullsAndUnknownStatus() throws Exception {
+		JobInfo job = gson.fromJson("{\"jobId\":null,\"status\":\"NO SLOT AVAILABLE\",\"duration\":null,"
+				+ "\"startTime\":null,\"result\":null}", JobInfo.class);
+		Assert.assertNull(job.getJobId());
+		Assert.assertNull(job.getStatus());
+		Assert.assertEquals(-1, job.getDurationMillis());
+		Assert.assertNull(job.getStartTime());
+		Assert.assertTrue(job.getResult() == null || job.getResult().isJsonNull());
+		Assert.assertNull(gson.fromJson("null", JobInfo.class));
+		Assert.assertNull(gson.fromJson("null", Binary.class));
+		Assert.assertNull(gson.fromJson("null", JobConfig.class));
+	}
+
+	@Test
+	public void readsLegacyTimes() throws Exception {
+		long legacy = new SimpleDateFormat("MMM d, yyyy h:mm:ss a", Locale.US).parse("Jun 19, 2016 4:27:12 PM")
+				.getTime();
+		JobInfo job = gson.fromJson("{\"startTime\":\"Jun 19, 2016 4:27:12 PM\"}", JobInfo.class);
+		Assert.assertEquals(legacy, job.getStartTimeEpochMillis());
+		Binary binary = gson.fromJson("{\"binary-type\":\"Jar\",\"upload-time\":\"Jun 19, 2016 4:27:12 PM\"}",
+				Binary.class);
+		Assert.assertEquals(legacy, binary.getUploadTimeEpochMillis());
+		try {
+			gson.fromJson("{\"startTime\":\"yesterday\"}", JobInfo.class);
+			Assert.fail(); // as the reflective adapter of a Date
+		} catch (JsonSyntaxException e) {
+		}
+	}
+
+	@Test
+	public void roundTripsJob() {
+		JobInfo job = gson.fromJson("{\"jobId\":\"j1\",\"status\":\"ERROR\",\"context\":\"ctx\",\"classPath\":\"a.B\","
+				+ "\"duration\":\"0.5 secs\",\"startTime\":\"2016-06-19T16:27:12.196+05:30\","
+				+ "\"result\":{\"message\":\"boom\",\"errorClass\":\"java.lang.RuntimeException\",\"stack\":[]}}",
+				JobInfo.class);
+		JobInfo copy = gson.fromJson(gson.toJson(job), JobInfo.class);
+		Assert.assertEquals("j1", copy.getJobId());
+		Assert.assertEquals(JobStatus.ERROR, copy.getStatus());
+		Assert.assertEquals("ctx", copy.getContext());
+		Assert.assertEquals("a.B", copy.getClassPath());
+		Assert.assertEquals(500, copy.getDurationMillis());
+		Assert.assertEquals(START, copy.getStartTimeEpochMillis());
+		Assert.assertEquals(job.getResult(), copy.getResult());
+	}
+
+	@Test
+	public void readsAndRoundTripsBinaries() {
+		Binaries binaries = gson.fromJson("{\"demo\":{\"binary-type\":\"Jar\","
+				+ "\"upload-time\":\"2016-06-19T16:27:12.196+05:30\",\"size\":123},"
+				+ "\"py\":{\"binary-type\":\"Egg\",\"upload-time\":null}}", Binaries.class);
+		Assert.assertEquals(2, binaries.size());
+		Assert.assertEquals("Jar", binaries.get("demo").getBinary_type());
+		Assert.assertEquals(START, binaries.get("demo").getUploadTimeEpochMillis());
+		Assert.assertEquals("Egg", binaries.get("py").getBinary_type());
+		Assert.assertNull(binaries.get("py").getUpload_time());
+		Binaries copy = gson.fromJson(gson.toJson(binaries), Binaries.class);
+		Assert.assertEquals("Jar", copy.get("demo").getBinary_type());
+		Assert.assertEquals(START, copy.get("demo").getUploadTimeEpochMillis());
+		Assert.assertEquals(-1, copy.get("py").getUploadTimeEpochMillis());
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void bindsWholeJobConfig() {
+		String json = "{\"input\":{\"string\":\"a b c a b see\"},\"spark\":{\"jobserver\":{\"max-jobs-per-context\":8}}}";
+		JobConfig config = gson.fromJson(json, JobConfig.class);
+		Assert.assertEquals(2, config.getConfigs().size());
+		Assert.assertEquals("a b c a b see", ((Map<String, Object>) config.getConfigs().get("input")).get("string"));
+		Map<String, Object> spark = (Map<String, Object>) config.getConfigs().get("spark");
+		Assert.assertEquals(8.0, ((Map<String, Object>) spark.get("jobserver")).get("max-jobs-per-context"));
+		Assert.assertEquals(gson.toJsonTree(gson.fromJson(json, Map.class)), gson.toJsonTree(config));
+	}
+}
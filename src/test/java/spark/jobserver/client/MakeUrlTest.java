@@ -0,0 +1,38 @@
+package spark.jobserver.client;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import junit.framework.Assert;
+
+/**
+ * Tests url construction of JobServerClient.
+ */
+public class MakeUrlTest {
+	private JobServerClient client = JobServerClient.builder().host("master").port(8090).build();
+
+	@Test
+	public void pathOnly() {
+		Assert.assertEquals("http://master:8090/jobs", client.makeUrl("/jobs", null).toString());
+		Assert.assertEquals("http://master:8090/jobs/1/config", client.makeUrl("jobs/1/config", null).toString());
+	}
+
+	@Test
+	public void encodesParams() {
+		Map<String, String> params = new LinkedHashMap<>();
+		params.put(Constants.PARAM_CONTEXT, "my context");
+		params.put("spark.driver.extraJavaOptions", "-Da=b&c");
+		Assert.assertEquals("http://master:8090/contexts/ctx?context=my%20context"
+				+ "&spark.driver.extraJavaOptions=-Da%3Db%26c",
+				client.makeUrl("/contexts/ctx", params).toString());
+	}
+
+	@Test
+	public void followsHostChange() {
+		client.makeUrl("/jobs", null);
+		client.setHost("worker");
+		Assert.assertEquals("http://worker:8090/jobs", client.makeUrl("/jobs", null).toString());
+	}
+}
@@ -0,0 +1,74 @@
+package spark.jobserver.client;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import junit.framework.Assert;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import util.JmxMetrics;
+import util.MicrometerMetrics;
+
+/**
+ * Tests the request metrics of the JMX and Micrometer implementations against
+ * a mock job server.
+ */
+public class MetricsTest {
+	private MockWebServer server;
+
+	@Before
+	public void setUp() throws Exception {
+		server = new MockWebServer();
+		server.start();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		server.shutdown();
+	}
+
+	@Test
+	public void publishesJmxMetrics() throws Exception {
+		server.enqueue(new MockResponse().setResponseCode(503));
+		server.enqueue(new MockResponse().setBody("{\"status\":\"OK\",\"result\":1}"));
+		try (JmxMetrics metrics = new JmxMetrics("test");
+				JobServerClient client = JobServerClient.builder().host(server.getHostName()).port(server.getPort())
+						.retryBackoffMillis(10).metrics(metrics).build()) {
+			client.getJobResult("j1");
+
+			ObjectName name = new ObjectName("spark.jobserver.client:type=Metrics,name=\"test\"");
+			TabularData requests = (TabularData) ManagementFactory.getPlatformMBeanServer().getAttribute(name,
+					"Requests");
+			CompositeData ok = (CompositeData) requests.get(new Object[] { "getJobResult 200" }).get("value");
+			Assert.assertEquals(1L, ok.get("count"));
+			Assert.assertEquals("/jobs/{id}", ok.get("endpoint"));
+			Assert.assertNotNull(requests.get(new Object[] { "getJobResult 503" }));
+			Assert.assertEquals(Long.valueOf(1), metrics.getRetries().get("getJobResult"));
+			Assert.assertTrue(metrics.getMeanParseMillis().containsKey("getJobResult"));
+			Assert.assertEquals(26, metrics.getResponseBytes());
+		}
+	}
+
+	@Test
+	public void publishesMicrometerMetrics() throws Exception {
+		server.enqueue(new MockResponse().setBody("[\"ctx\"]"));
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		try (JobServerClient client = JobServerClient.builder().host(server.getHostName()).port(server.getPort())
+				.metrics(new MicrometerMetrics(registry, "test")).build()) {
+			client.getContexts();
+		}
+		Assert.assertEquals(1, registry.get("jobserver.client.requests").tag("operation", "getContexts")
+				.tag("status", "200").timer().count());
+		Assert.assertEquals(7.0, registry.get("jobserver.client.response.bytes").summary().totalAmount());
+		Assert.assertEquals(1, registry.get("jobserver.client.parse").timer().count());
+		Assert.assertNotNull(registry.get("jobserver.client.connections").tag("state", "idle").gauge());
+	}
+}
@@ -0,0 +1,194 @@
+package spark.jobserver.client;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import junit.framework.Assert;
+import okhttp3.HttpUrl;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.SocketPolicy;
+import util.CircuitBreaker;
+import util.Http;
+import util.RetryPolicy;
+
+/**
+ * Tests status mapping, retries and the circuit breaker against a local mock job server.
+ */
+public class ResilienceTest {
+	private MockWebServer server;
+	private JobServerClient client;
+
+	@Before
+	public void setUp() throws Exception {
+		server = new MockWebServer();
+		server.start();
+		client = JobServerClient.builder().host(server.getHostName()).port(server.getPort()).retryBackoffMillis(10)
+				.failureThreshold(3).openMillis(60000).build();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		client.close();
+		server.shutdown();
+	}
+
+	@Test
+	public void retriesIdempotentGet() throws Exception {
+		server.enqueue(new MockResponse().setResponseCode(503));
+		server.enqueue(new MockResponse().setBody("[\"ctx\"]"));
+		Assert.assertEquals("ctx", client.getContexts().get(0));
+		Assert.assertEquals(2, server.getRequestCount());
+	}
+
+	@Test
+	public void doesNotRetryPost() throws Exception {
+		server.enqueue(new MockResponse().setResponseCode(503));
+		server.enqueue(new MockResponse().setBody("{}"));
+		try {
+			client.startJob("", new HashMap<>());
+			Assert.fail();
+		} catch (JobServerClientException e) {
+			Assert.assertEquals(503, e.getCode());
+		}
+		Assert.assertEquals(1, server.getRequestCount());
+	}
+
+	@Test
+	public void mapsNotFound() throws Exception {
+		server.enqueue(new MockResponse().setResponseCode(404)
+				.setBody("{\"status\":\"ERROR\",\"result\":\"No such job ID job1\"}"));
+		try {
+			client.getJobResult("job1");
+			Assert.fail();
+		} catch (JobServerClientException e) {
+			Assert.assertEquals(404, e.getCode());
+			Assert.assertTrue(e.getMessage().contains("No such job ID"));
+		}
+		Assert.assertEquals(1, server.getRequestCount());
+	}
+
+	@Test
+	public void opensCircuit() throws Exception {
+		for (int i = 0; i < 3; i++)
+			server.enqueue(new MockResponse().setResponseCode(500));
+		for (int i = 0; i < 3; i++) {
+			try {
+				client.killJob("job1");
+			} catch (JobServerClientException e) {
+				Assert.assertEquals(500, e.getCode());
+			}
+		}
+		try {
+			client.getJobs();
+			Assert.fail();
+		} catch (JobServerClientException e) {
+			Assert.assertEquals(Http.CIRCUIT_OPEN, e.getCode());
+		}
+		Assert.assertEquals(3, server.getRequestCount());
+	}
+
+	@Test
+	public void failedSyncJobsDoNotOpenCircuit() throws Exception {
+		String failed = "{\"status\":\"ERROR\",\"result\":{\"message\":\"boom\","
+				+ "\"errorClass\":\"java.lang.RuntimeException\",\"stack\":[]}}";
+		for (int i = 0; i < 6; i++)
+			server.enqueue(new MockResponse().setResponseCode(500).setBody(failed));
+		server.enqueue(new MockResponse().setBody("[]"));
+		HashMap<String, String> params = new HashMap<>();
+		params.put(Constants.PARAM_SYNC, "true");
+		for (int i = 0; i < 5; i++) {
+			JobInfo job = client.startJob("", params);
+			Assert.assertTrue(job.isError());
+			Assert.assertTrue(job.getResult().toString().contains("boom"));
+		}
+		Assert.assertTrue(client.startJobAsync("", params).get().isError());
+		Assert.assertTrue(client.getJobs().isEmpty());
+		Assert.assertEquals(7, server.getRequestCount());
+	}
+
+	@Test
+	public void doesNotResendConsumedStream() throws Exception {
+		server.enqueue(new MockResponse().setBody("[]"));
+		server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AFTER_REQUEST));
+		server.enqueue(new MockResponse().setBody("{\"status\":\"STARTED\"}"));
+		client.getContexts(); // pools the connection that is dropped next
+		try {
+			client.startJob(new ByteArrayInputStream("input.string = a".getBytes(StandardCharsets.UTF_8)),
+					new HashMap<>());
+			Assert.fail();
+		} catch (IOException e) {
+			// the stream was consumed by the dropped request
+		}
+		server.takeRequest();
+		for (int i = server.getRequestCount() - 1; i > 0; i--)
+			Assert.assertEquals("input.string = a", server.takeRequest().getBody().readUtf8());
+	}
+
+	@Test(timeout = 30000)
+	public void completesLargeBatchWithOpenCircuit() throws Exception {
+		for (int i = 0; i < 3; i++)
+			server.enqueue(new MockResponse().setResponseCode(500));
+		for (int i = 0; i < 3; i++) {
+			try {
+				client.killJob("job1");
+			} catch (JobServerClientException e) {
+				Assert.assertEquals(500, e.getCode());
+			}
+		}
+		List<JobSubmission> submissions = new ArrayList<>();
+		for (int i = 0; i < 20000; i++)
+			submissions.add(new JobSubmission("", new HashMap<>()));
+		BatchResult batch = client.startJobs(submissions);
+		Assert.assertEquals(20000, batch.getFailed());
+		Assert.assertEquals(Http.CIRCUIT_OPEN,
+				((JobServerClientException) batch.getEntries().get(19999).getError()).getCode());
+		Assert.assertEquals(3, server.getRequestCount());
+	}
+
+	@Test
+	public void stopsCancelledBatch() throws Exception {
+		for (int i = 0; i < 10; i++)
+			server.enqueue(new MockResponse().setBody("{\"status\":\"STARTED\"}").setBodyDelay(100,
+					TimeUnit.MILLISECONDS));
+		List<JobSubmission> submissions = new ArrayList<>();
+		for (int i = 0; i < 10; i++)
+			submissions.add(new JobSubmission("", new HashMap<>()));
+		CompletableFuture<BatchResult> batch = client.startJobsAsync(submissions, 1);
+		server.takeRequest();
+		batch.cancel(true);
+		Thread.sleep(500);
+		Assert.assertEquals(1, server.getRequestCount());
+	}
+
+	@Test
+	public void passesTrialOfInterruptedRequestOn() throws Exception {
+		RetryPolicy retry = RetryPolicy.builder().failureThreshold(1).openMillis(10).build();
+		HttpUrl url = server.url("/jobs");
+		retry.onFailure(new IOException("refused"));
+		Thread.sleep(20);
+		retry.allow("GET", url);
+		Assert.assertEquals(CircuitBreaker.State.HALF_OPEN, retry.circuitState());
+		try {
+			retry.send(() -> {
+				throw new InterruptedException();
+			}, code -> 200);
+			Assert.fail();
+		} catch (InterruptedException e) {
+			// the trial was abandoned
+		}
+		retry.allow("GET", url);
+		retry.onResponse(200);
+		Assert.assertEquals(CircuitBreaker.State.CLOSED, retry.circuitState());
+	}
+}
@@ -0,0 +1,99 @@
+package spark.jobserver.client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import junit.framework.Assert;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+/**
+ * Tests the cached listings and job results of a client, and the sharing of
+ * concurrent GETs, against a mock job server.
+ */
+public class ResponseCacheTest {
+	private MockWebServer server;
+	private JobServerClient client;
+
+	@Before
+	public void setUp() throws Exception {
+		server = new MockWebServer();
+		server.start();
+		client = JobServerClient.builder().host(server.getHostName()).port(server.getPort()).cacheTtlMillis(60000)
+				.resultCacheSize(1).build();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		client.close();
+		server.shutdown();
+	}
+
+	@Test
+	public void cachesContextsUntilChanged() throws Exception {
+		server.enqueue(new MockResponse().setBody("[\"a\"]"));
+		server.enqueue(new MockResponse().setBody("OK"));
+		server.enqueue(new MockResponse().setBody("[\"a\",\"b\"]"));
+		Assert.assertEquals(1, client.getContexts().size());
+		Assert.assertEquals(1, client.getContexts().size());
+		Assert.assertEquals(1, server.getRequestCount());
+
+		client.createContext("b", null);
+		Assert.assertEquals(2, client.getContexts().size());
+		Assert.assertEquals(3, server.getRequestCount());
+		Assert.assertEquals(1, client.getCacheStats().getHits());
+		Assert.assertEquals(2, client.getCacheStats().getMisses());
+	}
+
+	@Test
+	public void cachesOnlyDoneJobs() throws Exception {
+		server.enqueue(new MockResponse().setBody("{\"status\":\"RUNNING\"}"));
+		server.enqueue(new MockResponse().setBody("{\"status\":\"OK\",\"result\":42}"));
+		server.enqueue(new MockResponse().setBody("{\"status\":\"OK\",\"result\":7}"));
+		Assert.assertTrue(client.getJobResult("j1").isRunning());
+		Assert.assertEquals(42, client.getJobResult("j1").getResult().getAsInt());
+		Assert.assertEquals(42, client.getJobResultAsync("j1").get().getResult().getAsInt());
+		Assert.assertEquals(2, server.getRequestCount());
+
+		// evicts j1
+		Assert.assertEquals(7, client.getJobResult("j2").getResult().getAsInt());
+		Assert.assertEquals(1, client.getCacheStats().getEvictions());
+	}
+
+	@Test
+	public void readsOwnChangesWithoutCache() throws Exception {
+		try (JobServerClient uncached = JobServerClient.builder().host(server.getHostName()).port(server.getPort())
+				.build()) {
+			server.enqueue(new MockResponse().setBody("[\"a\"]").setBodyDelay(500, TimeUnit.MILLISECONDS));
+			server.enqueue(new MockResponse().setBody("OK"));
+			server.enqueue(new MockResponse().setBody("[\"a\",\"b\"]"));
+			CompletableFuture<List<String>> before = uncached.getContextsAsync();
+			Thread.sleep(100);
+			uncached.createContext("b", null);
+			Assert.assertEquals(2, uncached.getContexts().size());
+			Assert.assertEquals(1, before.get().size());
+			Assert.assertEquals(3, server.getRequestCount());
+		}
+	}
+
+	@Test
+	public void sharesConcurrentGets() throws Exception {
+		server.enqueue(new MockResponse().setBody("{\"status\":\"RUNNING\"}").setBodyDelay(200, TimeUnit.MILLISECONDS));
+		List<CompletableFuture<JobInfo>> calls = new ArrayList<>();
+		for (int i = 0; i < 10; i++)
+			calls.add(client.getJobResultAsync("j1"));
+		JobInfo sync = client.getJobResult("j1");
+		Assert.assertEquals("j1", sync.getJobId());
+		for (CompletableFuture<JobInfo> call : calls) {
+			Assert.assertTrue(call.get().isRunning());
+			Assert.assertNotSame(sync, call.get());
+		}
+		Assert.assertEquals(1, server.getRequestCount());
+	}
+}
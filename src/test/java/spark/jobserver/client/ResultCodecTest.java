@@ -0,0 +1,93 @@
+package spark.jobserver.client;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.gson.reflect.TypeToken;
+
+import junit.framework.Assert;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+/**
+ * Tests typed results with each codec against a mock job server.
+ */
+public class ResultCodecTest {
+	private static final String DONE = "{\"jobId\":\"j1\",\"status\":\"OK\",\"result\":[{\"word\":\"a\",\"count\":2},{\"word\":\"b\\\"\",\"count\":1}]}";
+	private static final String FAILED = "{\"status\":\"ERROR\",\"result\":{\"message\":\"boom\"}}";
+
+	public static class WordCount {
+		public String word;
+		public int count;
+	}
+
+	private MockWebServer server;
+	private JobServerClient client;
+
+	@Before
+	public void setUp() throws Exception {
+		server = new MockWebServer();
+		server.start();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		client.close();
+		server.shutdown();
+	}
+
+	@Test
+	public void decodesWithGson() throws Exception {
+		client = newClient(null);
+		server.enqueue(new MockResponse().setBody(DONE));
+		server.enqueue(new MockResponse().setBody(FAILED));
+		JobResult<List<WordCount>> job = client.getJobResult("j1", new TypeToken<List<WordCount>>() {
+		}.getType());
+		assertWordCounts(job);
+
+		JobResult<WordCount[]> failed = client.startJob("", new HashMap<>(), WordCount[].class);
+		Assert.assertNull(failed.getResult());
+		Assert.assertTrue(failed.getJob().isError());
+		Assert.assertEquals("boom", failed.getJob().getResult().getAsJsonObject().get("message").getAsString());
+	}
+
+	@Test
+	public void decodesWithJackson() throws Exception {
+		client = newClient(new JacksonResultCodec());
+		server.enqueue(new MockResponse().setBody(DONE));
+		server.enqueue(new MockResponse().setBody(FAILED));
+		assertWordCounts(client.getJobResult("j1", new TypeToken<List<WordCount>>() {
+		}.getType()));
+		Assert.assertTrue(client.getJobResult("j1", Map.class).getJob().isError());
+	}
+
+	@Test
+	public void returnsRawBytes() throws Exception {
+		client = newClient(new RawResultCodec());
+		server.enqueue(new MockResponse().setBody(DONE));
+		JobResult<ByteBuffer> job = client.getJobResult("j1", ByteBuffer.class);
+		Assert.assertTrue(job.getJob().isFinished());
+		Assert.assertEquals("[{\"word\":\"a\",\"count\":2},{\"word\":\"b\\\"\",\"count\":1}]",
+				StandardCharsets.UTF_8.decode(job.getResult()).toString());
+	}
+
+	private JobServerClient newClient(ResultCodec codec) {
+		return JobServerClient.builder().host(server.getHostName()).port(server.getPort()).resultCodec(codec).build();
+	}
+
+	private static void assertWordCounts(JobResult<List<WordCount>> job) {
+		Assert.assertEquals("j1", job.getJob().getJobId());
+		Assert.assertTrue(job.getJob().isFinished());
+		Assert.assertNull(job.getJob().getResult());
+		Assert.assertEquals(2, job.getResult().size());
+		Assert.assertEquals("b\"", job.getResult().get(1).word);
+		Assert.assertEquals(2, job.getResult().get(0).count);
+	}
+}
@@ -0,0 +1,151 @@
+package spark.jobserver.client;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import junit.framework.Assert;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import util.JsonArrayIterator;
+
+/**
+ * Tests the streaming reads of job results, jobs and binaries against a mock
+ * job server.
+ */
+public class StreamingTest {
+	private MockWebServer server;
+	private JobServerClient client;
+
+	@Before
+	public void setUp() throws Exception {
+		server = new MockWebServer();
+		server.start();
+		client = JobServerClient.builder().host(server.getHostName()).port(server.getPort()).maxRetries(-1).build();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		client.close();
+		server.shutdown();
+	}
+
+	@Test
+	public void streamsLargeResult() throws Exception {
+		int count = 200000;
+		StringBuilder body = new StringBuilder("{\"status\":\"OK\",\"result\":[");
+		for (int i = 0; i < count; i++)
+			body.append(i == 0 ? "" : ",").append(i);
+		body.append("],\"duration\":\"1.5 secs\"}");
+		server.enqueue(new MockResponse().setBody(body.toString()));
+
+		AtomicLong elements = new AtomicLong();
+		AtomicLong sum = new AtomicLong();
+		JobInfo job = client.<Integer> forEachResultElement("j1", Integer.class, i -> {
+			elements.incrementAndGet();
+			sum.addAndGet(i);
+		});
+		Assert.assertEquals(count, elements.get());
+		Assert.assertEquals((long) count * (count - 1) / 2, sum.get());
+		Assert.assertEquals("j1", job.getJobId());
+		Assert.assertEquals(JobStatus.OK, job.getStatus());
+		Assert.assertNull(job.getResult());
+	}
+
+	@Test
+	public void passesSingleResultAsOneElement() throws Exception {
+		server.enqueue(new MockResponse().setBody("{\"status\":\"ERROR\",\"result\":\"boom\"}"));
+		List<String> elements = new ArrayList<>();
+		JobInfo job = client.<String> forEachResultElement("j1", String.class, elements::add);
+		Assert.assertEquals(Arrays.asList("boom"), elements);
+		Assert.assertEquals(JobStatus.ERROR, job.getStatus());
+	}
+
+	@Test
+	public void visitsEmptyArrays() throws Exception {
+		server.enqueue(new MockResponse().setBody("{\"status\":\"OK\",\"result\":[]}"));
+		server.enqueue(new MockResponse().setBody("[]"));
+		server.enqueue(new MockResponse().setBody("{}"));
+		server.enqueue(new MockResponse().setBody("[]"));
+		List<Object> visited = new ArrayList<>();
+		Assert.assertEquals(JobStatus.OK, client.forEachResultElement("j1", Integer.class, visited::add).getStatus());
+		client.forEachJob(visited::add);
+		client.forEachBinary((name, binary) -> visited.add(name));
+		Assert.assertTrue(visited.isEmpty());
+		try (JsonArrayIterator<JobInfo> jobs = client.iterateJobs()) {
+			Assert.assertFalse(jobs.hasNext());
+		}
+	}
+
+	@Test
+	public void iteratesJobsAndBinaries() throws Exception {
+		server.enqueue(new MockResponse()
+				.setBody("[{\"jobId\":\"a\",\"status\":\"RUNNING\"},{\"jobId\":\"b\",\"status\":\"OK\"}]"));
+		server.enqueue(new MockResponse().setBody(
+				"{\"x\":{\"binary-type\":\"Jar\",\"upload-time\":\"2017-07-20T10:11:12.345+08:00\"},\"y\":{}}"));
+		List<String> names = new ArrayList<>();
+		try (JsonArrayIterator<JobInfo> jobs = client.iterateJobs()) {
+			while (jobs.hasNext())
+				names.add(jobs.next().getJobId());
+			Assert.assertFalse(jobs.hasNext());
+		}
+		client.forEachBinary((name, binary) -> names.add(name));
+		Assert.assertEquals(Arrays.asList("a", "b", "x", "y"), names);
+	}
+
+	@Test
+	public void closesIteratorEarly() throws Exception {
+		StringBuilder body = new StringBuilder("[");
+		for (int i = 0; i < 10000; i++)
+			body.append(i == 0 ? "" : ",").append("{\"jobId\":\"j").append(i).append("\",\"status\":\"OK\"}");
+		server.enqueue(new MockResponse().setBody(body.append("]").toString()));
+		server.enqueue(new MockResponse().setBody("[\"c1\"]"));
+
+		JsonArrayIterator<JobInfo> jobs = client.iterateJobs();
+		Assert.assertEquals("j0", jobs.next().getJobId());
+		jobs.close();
+		Assert.assertFalse(jobs.hasNext());
+		jobs.close();
+
+		// the client is still usable after the abandoned response
+		Assert.assertEquals(Arrays.asList("c1"), client.getContexts());
+	}
+
+	/**
+	 * A malformed response fails with an IOException wherever it breaks, after
+	 * the elements read before it were visited.
+	 */
+	@Test
+	public void failsOnMalformedJson() throws Exception {
+		server.enqueue(new MockResponse().setBody("[{\"jobId\":\"a\",\"status\":\"OK\"},{\"jobId\":"));
+		server.enqueue(new MockResponse().setBody("{\"status\":\"OK\",\"result\":[1,2,oops"));
+		server.enqueue(new MockResponse().setBody("{\"x\":"));
+		server.enqueue(new MockResponse().setBody("[\"c1\"]"));
+		List<Object> visited = new ArrayList<>();
+		try {
+			client.forEachJob(visited::add);
+			Assert.fail();
+		} catch (IOException e) {
+			Assert.assertEquals(1, visited.size());
+		}
+		try {
+			client.forEachResultElement("j1", Integer.class, visited::add);
+			Assert.fail();
+		} catch (IOException e) {
+			Assert.assertEquals(3, visited.size());
+		}
+		try {
+			client.forEachBinary((name, binary) -> visited.add(name));
+			Assert.fail();
+		} catch (IOException e) {
+			// expected
+		}
+		Assert.assertEquals(Arrays.asList("c1"), client.getContexts());
+	}
+}
@@ -0,0 +1,114 @@
+package spark.jobserver.client;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import junit.framework.Assert;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import util.ProgressListener;
+import util.StreamingBody;
+
+/**
+ * Tests the streamed uploads of binaries and their progress against a mock job
+ * server.
+ */
+public class StreamingUploadTest {
+	private static final int SIZE = 3 * StreamingBody.CHUNK_SIZE + 100;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	private MockWebServer server;
+	private JobServerClient client;
+	private byte[] jar;
+
+	@Before
+	public void setUp() throws Exception {
+		server = new MockWebServer();
+		server.start();
+		client = JobServerClient.builder().host(server.getHostName()).port(server.getPort()).build();
+		jar = new byte[SIZE];
+		new Random(42).nextBytes(jar);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		client.close();
+		server.shutdown();
+	}
+
+	/**
+	 * Records the progress callbacks.
+	 */
+	private static class Progress implements ProgressListener {
+		final List<long[]> calls = new ArrayList<>();
+
+		@Override
+		public synchronized void onProgress(long bytesWritten, long contentLength) {
+			calls.add(new long[] { bytesWritten, contentLength });
+		}
+
+		synchronized void assertReached(long total, long contentLength) {
+			Assert.assertTrue(calls.size() > 1);
+			long last = 0;
+			for (long[] call : calls) {
+				Assert.assertTrue(call[0] > last);
+				Assert.assertEquals(contentLength, call[1]);
+				last = call[0];
+			}
+			Assert.assertEquals(total, last);
+		}
+	}
+
+	@Test
+	public void streamsFileWithLength() throws Exception {
+		File file = folder.newFile("app.jar");
+		Files.write(file.toPath(), jar);
+		server.enqueue(new MockResponse().setBody("OK"));
+		Progress progress = new Progress();
+		Assert.assertEquals("OK", client.uploadJobJar(file, "app", progress));
+
+		RecordedRequest request = server.takeRequest();
+		Assert.assertEquals("/binaries/app", request.getPath());
+		Assert.assertEquals(Integer.toString(SIZE), request.getHeader("Content-Length"));
+		Assert.assertTrue(Arrays.equals(jar, request.getBody().readByteArray()));
+		progress.assertReached(SIZE, SIZE);
+	}
+
+	@Test
+	public void streamsStreamWithKnownLength() throws Exception {
+		server.enqueue(new MockResponse().setBody("OK"));
+		Progress progress = new Progress();
+		client.uploadJobJar(new ByteArrayInputStream(jar), SIZE, "app", progress);
+
+		RecordedRequest request = server.takeRequest();
+		Assert.assertEquals(Integer.toString(SIZE), request.getHeader("Content-Length"));
+		Assert.assertTrue(Arrays.equals(jar, request.getBody().readByteArray()));
+		progress.assertReached(SIZE, SIZE);
+	}
+
+	@Test
+	public void streamsStreamOfUnknownLengthChunked() throws Exception {
+		server.enqueue(new MockResponse().setBody("OK"));
+		Progress progress = new Progress();
+		client.uploadJobJar(new ByteArrayInputStream(jar), -1, "app", progress);
+
+		RecordedRequest request = server.takeRequest();
+		Assert.assertNull(request.getHeader("Content-Length"));
+		Assert.assertEquals("chunked", request.getHeader("Transfer-Encoding"));
+		Assert.assertTrue(Arrays.equals(jar, request.getBody().readByteArray()));
+		progress.assertReached(SIZE, -1);
+	}
+}
@@ -0,0 +1,168 @@
+package spark.jobserver.client;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import junit.framework.Assert;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+/**
+ * Tests the queueing and rate limiting of a submission scheduler against a
+ * mock job server. Started jobs run until the test removes them from
+ * <code>running</code>.
+ */
+public class SubmissionSchedulerTest {
+	private final Set<String> running = ConcurrentHashMap.newKeySet();
+	private final List<String> started = Collections.synchronizedList(new ArrayList<>());
+	private final AtomicInteger ids = new AtomicInteger();
+	private MockWebServer server;
+	private JobServerClient client;
+	private SubmissionScheduler scheduler;
+
+	@Before
+	public void setUp() throws Exception {
+		server = new MockWebServer();
+		server.setDispatcher(new Dispatcher() {
+			@Override
+			public MockResponse dispatch(RecordedRequest request) {
+				if (request.getMethod().equals("POST")) {
+					String jobId = "j" + ids.incrementAndGet();
+					running.add(jobId);
+					started.add(request.getBody().readUtf8());
+					return job(jobId, "STARTED");
+				}
+				if (request.getPath().startsWith("/jobs?"))
+					return new MockResponse().setBody(running.stream()
+							.map(id -> "{\"jobId\":\"" + id + "\",\"status\":\"RUNNING\"}")
+							.collect(Collectors.joining(",", "[", "]")));
+				return job(request.getPath().substring("/jobs/".length()), "OK");
+			}
+		});
+		server.start();
+		client = JobServerClient.builder().host(server.getHostName()).port(server.getPort()).build();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		if (scheduler != null)
+			scheduler.close();
+		client.close();
+		server.shutdown();
+	}
+
+	private static MockResponse job(String jobId, String status) {
+		return new MockResponse().setBody("{\"jobId\":\"" + jobId + "\",\"status\":\"" + status + "\",\"result\":1}");
+	}
+
+	private static Map<String, String> context(String name) {
+		Map<String, String> params = new HashMap<>();
+		params.put(Constants.PARAM_CONTEXT, name);
+		return params;
+	}
+
+	private void await(String what, BooleanSupplier condition) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline)
+			Thread.sleep(10);
+		Assert.assertTrue(what, condition.getAsBoolean());
+	}
+
+	@Test
+	public void queuesByContextAndPriority() throws Exception {
+		scheduler = SubmissionScheduler.builder().client(client).maxInFlightPerContext(1).pollIntervalMillis(50)
+				.build();
+		CompletableFuture<JobInfo> first = scheduler.submit("first", context("c1"), 0);
+		Assert.assertEquals("j1", first.get(5, TimeUnit.SECONDS).getJobId());
+		CompletableFuture<JobInfo> low = scheduler.submit("low", context("c1"), 1);
+		CompletableFuture<JobInfo> high = scheduler.submit("high", context("c1"), 2);
+		CompletableFuture<JobInfo> other = scheduler.submit("other", context("c2"), 0);
+		other.get(5, TimeUnit.SECONDS);
+		Assert.assertEquals(1, scheduler.getInFlight("c1"));
+		Assert.assertEquals(1, scheduler.getInFlight("c2"));
+		Assert.assertEquals(2, scheduler.getQueueDepth());
+
+		running.clear();
+		high.get(5, TimeUnit.SECONDS);
+		Assert.assertFalse(low.isDone());
+		running.clear();
+		low.get(5, TimeUnit.SECONDS);
+		Assert.assertTrue(started.indexOf("high") < started.indexOf("low"));
+		Assert.assertEquals(0, scheduler.getQueueDepth());
+		Assert.assertTrue(scheduler.getMaxWaitMillis() > 0);
+		Assert.assertTrue(scheduler.getAverageWaitMillis() <= scheduler.getMaxWaitMillis());
+	}
+
+	@Test
+	public void limitsStartRate() throws Exception {
+		scheduler = SubmissionScheduler.builder().client(client).maxInFlightPerContext(100).submitsPerSecond(20)
+				.burst(1).build();
+		long start = System.nanoTime();
+		List<CompletableFuture<JobInfo>> jobs = new ArrayList<>();
+		for (int i = 0; i < 6; i++)
+			jobs.add(scheduler.submit("job" + i, null, 0));
+		for (CompletableFuture<JobInfo> job : jobs)
+			job.get(5, TimeUnit.SECONDS);
+		// the first start is free, the other five wait 50ms each
+		Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 230);
+		Assert.assertEquals(6, scheduler.getInFlight(null));
+	}
+
+	@Test
+	public void rejectsWhenQueueIsFull() throws Exception {
+		scheduler = SubmissionScheduler.builder().client(client).maxInFlightPerContext(1).queueCapacity(1)
+				.pollIntervalMillis(50).build();
+		scheduler.submit("running", null, 0).get(5, TimeUnit.SECONDS);
+		await("job in flight", () -> scheduler.getInFlight(null) == 1);
+		CompletableFuture<JobInfo> queued = scheduler.submit("queued", null, 0);
+		CompletableFuture<JobInfo> rejected = scheduler.submit("rejected", null, 0);
+		assertRejected(rejected);
+		Assert.assertFalse(queued.isDone());
+
+		scheduler.close();
+		assertRejected(queued);
+		Assert.assertEquals(1, started.size());
+	}
+
+	@Test
+	public void keepsDispatchingAfterInvalidSubmission() throws Exception {
+		scheduler = SubmissionScheduler.builder().client(client).maxInFlightPerContext(1).build();
+		Map<String, String> invalid = new HashMap<>();
+		invalid.put(null, "no name");
+		try {
+			scheduler.submit("invalid", invalid, 0).get(5, TimeUnit.SECONDS);
+			Assert.fail();
+		} catch (ExecutionException e) {
+			// thrown by the client before sending
+		}
+		Assert.assertEquals(0, scheduler.getInFlight(null));
+		Assert.assertEquals("j1", scheduler.submit("valid", null, 0).get(5, TimeUnit.SECONDS).getJobId());
+	}
+
+	private static void assertRejected(CompletableFuture<JobInfo> future) throws Exception {
+		try {
+			future.get(5, TimeUnit.SECONDS);
+			Assert.fail();
+		} catch (ExecutionException e) {
+			Assert.assertTrue(e.getCause() instanceof RejectedExecutionException);
+		}
+	}
+}
@@ -0,0 +1,42 @@
+package spark.jobserver.client;
+
+import org.junit.Test;
+
+import junit.framework.Assert;
+
+/**
+ * Tests the parsing of the times and durations reported by the job server.
+ */
+public class TimesTest {
+	@Test
+	public void parseDuration() {
+		Assert.assertEquals(12345, Times.parseDurationMillis("12.345 secs"));
+		Assert.assertEquals(200, Times.parseDurationMillis("0.2 secs"));
+		Assert.assertEquals(3000, Times.parseDurationMillis("3"));
+		Assert.assertEquals(1500, Times.parseDurationMillis("1.5e0 secs"));
+		Assert.assertEquals(-1, Times.parseDurationMillis("Job not done yet"));
+		Assert.assertEquals(-1, Times.parseDurationMillis(null));
+	}
+
+	@Test
+	public void parseTime() {
+		long millis = 1500516672345L; // 2017-07-20T02:11:12.345Z
+		Assert.assertEquals(millis, Times.parseEpochMillis("2017-07-20T10:11:12.345+08:00"));
+		Assert.assertEquals(millis, Times.parseEpochMillis("2017-07-20T02:11:12.345Z"));
+		Assert.assertEquals(millis, Times.parseEpochMillis("2017-07-20T02:11:12.345"));
+		Assert.assertEquals(millis, Times.parseEpochMillis(Times.formatEpochMillis(millis)));
+		Assert.assertEquals(-1, Times.parseEpochMillis("Jul 20, 2017 2:11:12 AM"));
+	}
+
+	@Test
+	public void bindsJobTimes() {
+		JobInfo job = util.Pojo.gson.fromJson(
+				"{\"jobId\":\"1\",\"duration\":\"1.5 secs\",\"startTime\":\"2017-07-20T10:11:12.345+08:00\"}",
+				JobInfo.class);
+		Assert.assertEquals(1500, job.getDurationMillis());
+		Assert.assertEquals(1500516672345L, job.getStartTimeEpochMillis());
+		Assert.assertEquals(1500516672345L, job.getStartTime().getTime());
+		JobInfo copy = util.Pojo.gson.fromJson(util.Pojo.gson.toJson(job), JobInfo.class);
+		Assert.assertEquals(1500516672345L, copy.getStartTimeEpochMillis());
+	}
+}
@@ -0,0 +1,41 @@
+package spark.jobserver.client;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import junit.framework.Assert;
+
+/**
+ * Tests the burst and refill of the rate limiter of the submission scheduler.
+ */
+public class TokenBucketTest {
+
+	@Test
+	public void allowsBurstThenWaits() {
+		TokenBucket bucket = new TokenBucket(10, 3);
+		for (int i = 0; i < 3; i++)
+			Assert.assertEquals(0, bucket.tryAcquire());
+		long wait = bucket.tryAcquire();
+		Assert.assertTrue(wait > 0);
+		Assert.assertTrue(wait <= TimeUnit.MILLISECONDS.toNanos(100));
+	}
+
+	@Test
+	public void refillsAtRate() throws Exception {
+		TokenBucket bucket = new TokenBucket(20, 1);
+		Assert.assertEquals(0, bucket.tryAcquire());
+		Assert.assertTrue(bucket.tryAcquire() > 0);
+		Thread.sleep(60);
+		Assert.assertEquals(0, bucket.tryAcquire());
+	}
+
+	@Test
+	public void doesNotSaveUpAboveBurst() throws Exception {
+		TokenBucket bucket = new TokenBucket(50, 2);
+		Thread.sleep(100);
+		Assert.assertEquals(0, bucket.tryAcquire());
+		Assert.assertEquals(0, bucket.tryAcquire());
+		Assert.assertTrue(bucket.tryAcquire() > 0);
+	}
+}
@@ -0,0 +1,228 @@
+package spark.jobserver.client;
+
+import java.io.ByteArrayInputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import junit.framework.Assert;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.SocketPolicy;
+import util.Metrics;
+
+/**
+ * Tests that the dispatcher, timeout and pool settings of the client take
+ * effect, and that closing the client releases them.
+ */
+public class TransportSettingsTest {
+	private MockWebServer server;
+	private JobServerClient client;
+	private Pool pool;
+
+	@Before
+	public void setUp() throws Exception {
+		server = new MockWebServer();
+		server.start();
+		pool = new Pool();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		if (client != null)
+			client.close();
+		server.shutdown();
+	}
+
+	/**
+	 * Reads the connection pool through the gauges bound to the metrics.
+	 */
+	private static class Pool implements Metrics {
+		volatile IntSupplier idle;
+		volatile IntSupplier active;
+
+		@Override
+		public void bindConnectionPool(IntSupplier idle, IntSupplier active) {
+			this.idle = idle;
+			this.active = active;
+		}
+
+		int connections() {
+			return idle.getAsInt() + active.getAsInt();
+		}
+
+		void awaitConnections(int idleCount, int count) throws InterruptedException {
+			long deadline = System.currentTimeMillis() + 5000;
+			while ((idle.getAsInt() != idleCount || connections() != count)
+					&& System.currentTimeMillis() < deadline)
+				Thread.sleep(10);
+			Assert.assertEquals(idleCount, idle.getAsInt());
+			Assert.assertEquals(count, connections());
+		}
+	}
+
+	private JobServerClient.JobServerClientBuilder builder() {
+		return JobServerClient.builder().host(server.getHostName()).port(server.getPort()).maxRetries(-1)
+				.metrics(pool);
+	}
+
+	@Test(timeout = 10000)
+	public void limitsRequestsPerHost() throws Exception {
+		client = builder().maxRequestsPerHost(2).readTimeoutMillis(60000).build();
+		server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE));
+		server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE));
+		server.enqueue(new MockResponse().setBody("OK"));
+		CompletableFuture<String> first = client.killJobAsync("j1");
+		client.killJobAsync("j2");
+		CompletableFuture<String> third = client.killJobAsync("j3");
+		server.takeRequest();
+		server.takeRequest();
+		Thread.sleep(300);
+		// the third call waits for one of the two stuck ones
+		Assert.assertEquals(2, server.getRequestCount());
+		Assert.assertFalse(third.isDone());
+		first.cancel(true);
+		Assert.assertEquals("OK", third.get());
+		Assert.assertEquals("/jobs/j3", server.takeRequest().getPath());
+	}
+
+	@Test(timeout = 10000)
+	public void timesOutReads() throws Exception {
+		client = builder().readTimeoutMillis(200).build();
+		server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE));
+		long start = System.currentTimeMillis();
+		try {
+			client.getContexts();
+			Assert.fail();
+		} catch (SocketTimeoutException e) {
+		}
+		Assert.assertTrue(System.currentTimeMillis() - start < 5000);
+	}
+
+	@Test(timeout = 10000)
+	public void timesOutWrites() throws Exception {
+		// accepted by the kernel but never read, so the upload stalls once the
+		// socket buffers are full
+		try (ServerSocket stalled = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+			client = JobServerClient.builder().host(stalled.getInetAddress().getHostAddress())
+					.port(stalled.getLocalPort()).writeTimeoutMillis(200).readTimeoutMillis(60000).build();
+			try {
+				client.uploadJobJar(new ByteArrayInputStream(new byte[64 << 20]), 64 << 20, "app", null);
+				Assert.fail();
+			} catch (SocketTimeoutException e) {
+			}
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void timesOutConnects() throws Exception {
+		List<Socket> backlog = new ArrayList<>();
+		try (ServerSocket full = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+			// fill the accept queue, so that further connects are never answered
+			for (int i = 0; i < 8; i++) {
+				Socket socket = new Socket();
+				backlog.add(socket);
+				try {
+					socket.connect(new InetSocketAddress(full.getInetAddress(), full.getLocalPort()), 100);
+				} catch (SocketTimeoutException e) {
+					break;
+				}
+			}
+			client = JobServerClient.builder().host(full.getInetAddress().getHostAddress())
+					.port(full.getLocalPort()).connectTimeoutMillis(200).readTimeoutMillis(60000).maxRetries(-1)
+					.build();
+			long start = System.currentTimeMillis();
+			try {
+				client.getContexts();
+				Assert.fail();
+			} catch (SocketTimeoutException e) {
+			}
+			Assert.assertTrue(System.currentTimeMillis() - start < 5000);
+		} finally {
+			for (Socket socket : backlog)
+				socket.close();
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void keepsConfiguredIdleConnections() throws Exception {
+		client = builder().maxIdleConnections(1).keepAliveMillis(60000).build();
+		server.enqueue(new MockResponse().setBody("OK").setBodyDelay(300, TimeUnit.MILLISECONDS));
+		server.enqueue(new MockResponse().setBody("OK").setBodyDelay(300, TimeUnit.MILLISECONDS));
+		CompletableFuture<String> first = client.killJobAsync("j1");
+		CompletableFuture<String> second = client.killJobAsync("j2");
+		first.get();
+		second.get();
+		// two connections were opened, only one is kept idle
+		pool.awaitConnections(1, 1);
+		Thread.sleep(200);
+		Assert.assertEquals(1, pool.connections());
+	}
+
+	@Test(timeout = 10000)
+	public void dropsConnectionsIdlePastKeepAlive() throws Exception {
+		client = builder().keepAliveMillis(300).build();
+		server.enqueue(new MockResponse().setBody("OK"));
+		client.killJob("j1");
+		pool.awaitConnections(1, 1);
+		pool.awaitConnections(0, 0);
+	}
+
+	@Test(timeout = 10000)
+	public void closeReleasesTransportAndOwnedScheduler() throws Exception {
+		client = builder().keepAliveMillis(60000).build();
+		server.enqueue(new MockResponse().setBody("OK"));
+		client.killJob("j1");
+		pool.awaitConnections(1, 1);
+		client.close();
+		// the pool is drained
+		Assert.assertEquals(0, pool.connections());
+		// the dispatcher takes no more calls
+		try {
+			client.killJobAsync("j2").get();
+			Assert.fail();
+		} catch (ExecutionException | RejectedExecutionException e) {
+		}
+		// the scheduler created by the client is shut down, so a wait is
+		// rejected before its first poll
+		CompletableFuture<JobInfo> wait = client.awaitJobAsync("j1", 1, TimeUnit.SECONDS);
+		Assert.assertTrue(wait.isCompletedExceptionally());
+		try {
+			wait.get();
+			Assert.fail();
+		} catch (ExecutionException e) {
+			Assert.assertTrue(e.getCause() instanceof RejectedExecutionException);
+		}
+		Assert.assertEquals(1, server.getRequestCount());
+		client = null;
+	}
+
+	@Test(timeout = 10000)
+	public void closeKeepsGivenScheduler() throws Exception {
+		ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+		try {
+			client = builder().scheduler(scheduler).build();
+			client.close();
+			client = null;
+			Assert.assertFalse(scheduler.isShutdown());
+			Assert.assertEquals("done", scheduler.submit(() -> "done").get());
+		} finally {
+			scheduler.shutdownNow();
+		}
+	}
+}